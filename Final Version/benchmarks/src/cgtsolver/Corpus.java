@@ -0,0 +1,106 @@
+package cgtsolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fixed corpus of mid-game positions the benchmarks run on, created by random
+ * playouts from a fixed seed with seeded Zobrist keys, so runs on different
+ * versions of the solver measure the same work.
+ *
+ * @author daniel
+ */
+final class Corpus
+{
+  /**
+   * Seed of the random playouts and of the Zobrist keys.
+   */
+  static final long SEED = 20160517L;
+
+  /**
+   * Board sizes of the corpus, width and height.
+   */
+  static final int[][] BOARDS =
+  {
+    {
+      4, 4
+    },
+    {
+      5, 5
+    },
+    {
+      6, 6
+    },
+    {
+      8, 8
+    },
+    {
+      10, 6
+    }
+  };
+
+  /**
+   * Number of positions per board size.
+   */
+  static final int POSITIONS_PER_BOARD = 16;
+
+  /**
+   * Number of positions of the corpus, the operations of a benchmark
+   * invocation going through all of them.
+   */
+  static final int SIZE = 80;
+
+  /**
+   * Length of move buffers large enough for every corpus board, the largest
+   * number of tiles.
+   */
+  static final int MAX_MOVES_NUMBER = 64;
+
+  private Corpus()
+  {
+  }
+
+  /**
+   * Creates the positions of all corpus board sizes: random moves are played
+   * until at most half of the tiles are free, keeping only positions where
+   * the player to move still has a move.
+   *
+   * @return
+   */
+  static GameState[] create()
+  {
+    Random random = new Random(SEED);
+    List<GameState> corpus = new ArrayList<>();
+    for (int[] board : BOARDS)
+    {
+      ZobristKeys keys = new ZobristKeys(board[0], board[1], SEED);
+      int[] moves = new int[MAX_MOVES_NUMBER];
+      int positions = 0;
+      while (positions < POSITIONS_PER_BOARD)
+      {
+        GameState gameState = new GameState(board[0], board[1]);
+        gameState.setZobristKeys(keys);
+        int movesNumber = gameState.getAvailableMoves(moves);
+        while (movesNumber > 0
+                && 2 * gameState.getFreeTilesNumber() > board[0] * board[1])
+        {
+          gameState.doMove(moves[random.nextInt(movesNumber)]);
+          gameState.toggleVerticalsTurn();
+          movesNumber = gameState.getAvailableMoves(moves);
+        }
+        if (movesNumber > 0)
+        {
+          corpus.add(gameState);
+          positions++;
+        }
+      }
+    }
+    if (corpus.size() != SIZE)
+    {
+      throw new IllegalStateException("Corpus has " + corpus.size()
+              + " positions instead of " + SIZE);
+    }
+    return corpus.toArray(new GameState[SIZE]);
+  }
+}
@@ -0,0 +1,102 @@
+package cgtsolver;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the work done at every node of the search: generating the
+ * moves, making and taking back each of them, and ordering them. Every
+ * invocation goes through the whole corpus, so the times are per position.
+ *
+ * @author daniel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class MoveBenchmark
+{
+  private GameState[] corpus;
+
+  /**
+   * Moves of every corpus position in generation order, copied before
+   * ordering so every invocation sorts the same unsorted moves.
+   */
+  private int[][] corpusMoves;
+
+  private final int[] moves = new int[Corpus.MAX_MOVES_NUMBER];
+  private final int[] moveOrderValues = new int[Corpus.MAX_MOVES_NUMBER];
+  private AbSolver solver;
+
+  @Setup
+  public void setUp()
+  {
+    corpus = Corpus.create();
+    corpusMoves = new int[corpus.length][];
+    solver = new AbSolver(1, 1);
+    for (int i = 0; i < corpus.length; i++)
+    {
+      int movesNumber = corpus[i].getAvailableMoves(moves);
+      corpusMoves[i] = Arrays.copyOf(moves, movesNumber);
+      solver.allocateMoveBuffers(0, corpus[i]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Corpus.SIZE)
+  public int getAvailableMoves()
+  {
+    int sum = 0;
+    for (GameState gameState : corpus)
+    {
+      sum += gameState.getAvailableMoves(moves);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Corpus.SIZE)
+  public long doMoveUndoMove()
+  {
+    long sum = 0;
+    for (int i = 0; i < corpus.length; i++)
+    {
+      GameState gameState = corpus[i];
+      for (int move : corpusMoves[i])
+      {
+        gameState.doMove(move);
+        sum += gameState.getHash();
+        gameState.undoMove();
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Corpus.SIZE)
+  public int orderMoves()
+  {
+    int sum = 0;
+    for (int i = 0; i < corpus.length; i++)
+    {
+      int movesNumber = corpusMoves[i].length;
+      System.arraycopy(corpusMoves[i], 0, moves, 0, movesNumber);
+      solver.orderMoves(corpus[i], moves, moveOrderValues, movesNumber, 0);
+      sum += moves[0];
+    }
+    return sum;
+  }
+}
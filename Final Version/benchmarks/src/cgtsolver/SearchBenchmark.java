@@ -0,0 +1,43 @@
+package cgtsolver;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of complete single threaded solves of small boards, covering the
+ * hot paths together. Every solve uses a fresh solver, so no positions are
+ * known from the last one.
+ *
+ * @author daniel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class SearchBenchmark
+{
+  @Param(
+  {
+    "6", "7"
+  })
+  public int size;
+
+  @Benchmark
+  public long search()
+  {
+    AbSolver solver = new AbSolver(16, 1);
+    solver.setPrintResults(false);
+    return solver.search(new GameState(size, size)).getNodes();
+  }
+}
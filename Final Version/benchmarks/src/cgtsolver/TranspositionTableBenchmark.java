@@ -0,0 +1,134 @@
+package cgtsolver;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the transposition table probe done at every node, for
+ * positions stored in the table and positions missing from it, and of the
+ * canonical hash after a move the probes of the enhanced transposition cutoff
+ * use. The table sizes show the cost of probes missing the processor caches.
+ *
+ * @author daniel
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class TranspositionTableBenchmark
+{
+  /**
+   * Number of probes of a benchmark invocation.
+   */
+  private static final int PROBES = 1024;
+
+  /**
+   * Number of hashes stored in the table, and of hashes missing from it.
+   */
+  private static final int HASHES = 1 << 16;
+
+  @Param(
+  {
+    "1", "64"
+  })
+  public int sizeMb;
+
+  private ZobristTranspositionTable table;
+  private final long[] storedHashes = new long[HASHES];
+  private final long[] missingHashes = new long[HASHES];
+  private int next;
+
+  private GameState[] corpus;
+  private int[][] corpusMoves;
+
+  @Setup
+  public void setUp()
+  {
+    table = new ZobristTranspositionTable(8, 8, sizeMb);
+    //Zobrist hashes are uniformly distributed, so random numbers stand in
+    //for the hashes of a search
+    SplittableRandom random = new SplittableRandom(Corpus.SEED);
+    for (int i = 0; i < HASHES; i++)
+    {
+      storedHashes[i] = random.nextLong();
+      missingHashes[i] = random.nextLong();
+      table.setHashedValue(storedHashes[i], (i & 1) != 0 ? 1 : -1, i);
+    }
+
+    corpus = Corpus.create();
+    corpusMoves = new int[corpus.length][];
+    int[] moves = new int[Corpus.MAX_MOVES_NUMBER];
+    for (int i = 0; i < corpus.length; i++)
+    {
+      int movesNumber = corpus[i].getAvailableMoves(moves);
+      corpusMoves[i] = Arrays.copyOf(moves, movesNumber);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PROBES)
+  public int probeStored()
+  {
+    return probe(storedHashes);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(PROBES)
+  public int probeMissing()
+  {
+    return probe(missingHashes);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(Corpus.SIZE)
+  public long getCanonicalHashAfter()
+  {
+    long sum = 0;
+    for (int i = 0; i < corpus.length; i++)
+    {
+      for (int move : corpusMoves[i])
+      {
+        sum += corpus[i].getCanonicalHashAfter(move);
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Probes the next hashes of a list, continuing where the last invocation
+   * stopped, so the probes of the 64 MB table are not answered from the
+   * caches.
+   *
+   * @param hashes
+   * @return The number of probes finding a value.
+   */
+  private int probe(long[] hashes)
+  {
+    int found = 0;
+    for (int i = 0; i < PROBES; i++)
+    {
+      if (table.getHashedValue(hashes[next])
+              != ZobristTranspositionTable.NO_VALUE)
+      {
+        found++;
+      }
+      next = (next + 1) & (HASHES - 1);
+    }
+    return found;
+  }
+}
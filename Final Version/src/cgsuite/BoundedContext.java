@@ -0,0 +1,203 @@
+/*
+ * BoundedContext.java
+ */
+
+package cgsuite;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link Context} whose primary cache holds at most a fixed number of
+ * entries, evicting the least recently used one when full. The cache counts
+ * hits, misses and evictions separately for every type of operation
+ * memoized by {@link CanonicalGame} (sums, Norton products, atomic weights
+ * and Conway products); all other keys are counted as "other".
+ * <p>
+ * The cache may be used by several threads at once. To use it, install it
+ * before any calculation starts:
+ * <p>
+ * <code>Context.setActiveContext(new BoundedContext(1000000))</code>
+ *
+ * @author daniel
+ */
+public class BoundedContext extends Context.DefaultContext
+{
+    /**
+     * Names of the operation types, indexed like the counters. The last one
+     * covers keys that are not operations of <code>CanonicalGame</code>.
+     */
+    private static final String[] OPERATION_NAMES =
+    {
+        "sum", "Norton product", "atomic weight", "Conway product", "other"
+    };
+
+    private static final int OTHER = OPERATION_NAMES.length - 1;
+
+    private final BoundedCache boundedCache;
+
+    /**
+     * Creates a context whose primary cache holds at most
+     * <code>maxEntries</code> entries.
+     *
+     * @param   maxEntries The maximum number of cache entries.
+     */
+    public BoundedContext(int maxEntries)
+    {
+        if (maxEntries <= 0)
+        {
+            throw new IllegalArgumentException("maxEntries must be positive.");
+        }
+        boundedCache = new BoundedCache(maxEntries);
+        primaryCache = boundedCache;
+    }
+
+    public int getMaxEntries()
+    {
+        return boundedCache.maxEntries;
+    }
+
+    /**
+     * Gets the number of lookups of an operation type that found an entry.
+     *
+     * @param   operationType One of the <code>OPERATION_TYPE_*</code>
+     *          constants of <code>CanonicalGame</code>, or -1 for other keys.
+     * @return  The number of hits.
+     */
+    public long getHits(int operationType)
+    {
+        synchronized (boundedCache)
+        {
+            return boundedCache.hits[index(operationType)];
+        }
+    }
+
+    public long getMisses(int operationType)
+    {
+        synchronized (boundedCache)
+        {
+            return boundedCache.misses[index(operationType)];
+        }
+    }
+
+    public long getEvictions(int operationType)
+    {
+        synchronized (boundedCache)
+        {
+            return boundedCache.evictions[index(operationType)];
+        }
+    }
+
+    private static int index(int operationType)
+    {
+        return operationType >= 0 && operationType < OTHER ? operationType : OTHER;
+    }
+
+    /**
+     * Describes the size of the cache and the counters of every operation
+     * type that was looked up or evicted.
+     *
+     * @return  A report, one line per operation type.
+     */
+    public String createReport()
+    {
+        StringBuilder report = new StringBuilder();
+        synchronized (boundedCache)
+        {
+            report.append("Primary cache entries: " + boundedCache.size() + " of " + boundedCache.maxEntries + "\n");
+            for (int i = 0; i < OPERATION_NAMES.length; i++)
+            {
+                if (boundedCache.hits[i] + boundedCache.misses[i] + boundedCache.evictions[i] > 0)
+                {
+                    report.append(OPERATION_NAMES[i] + ": " + boundedCache.hits[i] + " hits, " + boundedCache.misses[i] + " misses, " + boundedCache.evictions[i] + " evictions\n");
+                }
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Least recently used cache guarded by its own lock. Only
+     * <code>get</code> counts hits and misses, so callers should look up
+     * an entry with a single <code>get</code> rather than
+     * <code>containsKey</code> followed by <code>get</code>.
+     */
+    private static class BoundedCache extends AbstractMap
+    {
+        private final int maxEntries;
+
+        private final long[] hits = new long[OPERATION_NAMES.length];
+        private final long[] misses = new long[OPERATION_NAMES.length];
+        private final long[] evictions = new long[OPERATION_NAMES.length];
+
+        private final LinkedHashMap entries;
+
+        BoundedCache(int maxEntries)
+        {
+            this.maxEntries = maxEntries;
+            entries = new LinkedHashMap(Math.min(maxEntries, 1 << 16), 0.75f, true)
+            {
+                protected boolean removeEldestEntry(Map.Entry eldest)
+                {
+                    if (size() <= BoundedCache.this.maxEntries)
+                    {
+                        return false;
+                    }
+                    evictions[index(CanonicalGame.getOperationType(eldest.getKey()))]++;
+                    return true;
+                }
+            };
+        }
+
+        public synchronized Object get(Object key)
+        {
+            Object value = entries.get(key);
+            if (value != null)
+            {
+                hits[index(CanonicalGame.getOperationType(key))]++;
+            }
+            else
+            {
+                misses[index(CanonicalGame.getOperationType(key))]++;
+            }
+            return value;
+        }
+
+        public synchronized boolean containsKey(Object key)
+        {
+            return entries.containsKey(key);
+        }
+
+        public synchronized Object put(Object key, Object value)
+        {
+            return entries.put(key, value);
+        }
+
+        public synchronized Object remove(Object key)
+        {
+            return entries.remove(key);
+        }
+
+        public synchronized int size()
+        {
+            return entries.size();
+        }
+
+        public synchronized void clear()
+        {
+            entries.clear();
+        }
+
+        /**
+         * Returns a copy of the entries, which does not reflect later
+         * changes of the cache.
+         */
+        public synchronized Set entrySet()
+        {
+            return new HashMap(entries).entrySet();
+        }
+    }
+}
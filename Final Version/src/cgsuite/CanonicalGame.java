@@ -30,6 +30,10 @@ package cgsuite;
 
 import java.lang.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.io.Serializable;
 
 import nl.unimaas.dke.domineering.grid.AbstractGrid;
@@ -99,117 +103,362 @@ public final class CanonicalGame implements StopperGame, Comparable
       }
    }
 
-   // Instances of this class are used as hashtable keys for the
-   // game cache, which maps canonical (left and right) option lists to the
-   // canonical form of the associated game.
-   private final static class OptionsKey implements Serializable
+   // Instances of this class are used as hashtable keys for the operation
+   // cache: sums, Norton and Conway products and atomic weights.
+   private final static class OperationKey implements Serializable
    {
-      public CanonicalGame[] leftOptions;
-      public CanonicalGame[] rightOptions;
+      public final static int OPERATION_TYPE_SUM = 0, OPERATION_TYPE_NORTON_PRODUCT = 1, OPERATION_TYPE_ATOMIC_WEIGHT = 2, OPERATION_TYPE_CONWAY_PRODUCT = 3;
+
+      public int              operationType;
+      public CanonicalGame    g, h;
 
-      public OptionsKey(CanonicalGame[] leftOptions, CanonicalGame[] rightOptions)
+      public OperationKey(int initOperationType, CanonicalGame initG, CanonicalGame initH)
       {
-         this.leftOptions = leftOptions;
-         this.rightOptions = rightOptions;
+         operationType = initOperationType;
+         g = initG;
+         h = initH;
       }
 
       public boolean equals(Object obj)
       {
-         if (obj == null || !(obj instanceof OptionsKey))
+         if (obj == null || !(obj instanceof OperationKey))
          {
             return false;
          }
-         OptionsKey ok = (OptionsKey) obj;
-         if (leftOptions.length != ok.leftOptions.length || rightOptions.length != ok.rightOptions.length)
+         OperationKey ok = (OperationKey) obj;
+         return operationType == ok.operationType && ((g == ok.g && h == ok.h) || (operationType == OPERATION_TYPE_SUM && g == ok.h && h == ok.g));
+         // (Sum is commutative!)
+      }
+
+      public int hashCode()
+      {
+         return operationType + (g == null ? 0 : g.hashCode()) + (h == null ? 0 : h.hashCode());
+      }
+   }
+
+   // The arena holds the options, birthdays and flags of all games, indexed
+   // by ID. A CanonicalGame is little more than a handle on its ID: the IDs
+   // of its options are stored as one record
+   // [#left options, #right options, left option IDs, right option IDs]
+   // in a single large int array, and the offset of the record, the
+   // birthday and the flags in columns indexed by ID. The arena also maps
+   // option lists to games, with a hash table of IDs. The millions of games
+   // of a large calculation thus take a few primitive arrays, which the
+   // garbage collector does not need to trace, instead of a number of
+   // objects each.
+   // The arena decides which instance represents a game: new games are only
+   // created by intern(), which is synchronized. The columns are held by an
+   // immutable Columns object in a volatile field, which intern() replaces
+   // after writing everything about a new game and before storing its ID in
+   // the hash table; the arrays grow by copying. Readers load the Columns
+   // once per lookup (and once per comparison in leq), so the volatile read
+   // orders their reads after the writes of every game the Columns holds,
+   // and all columns they look at are of the same version. Writes of later
+   // games only go to entries beyond the size of older Columns.
+   private final static class GameArena
+   {
+      // Flags of a game: whether it is a number-up-star, and whether it is a
+      // number.
+      public final static int NUMBER_UP_STAR = 1, NUMBER = 2;
+
+      // The records and columns of the first size games.
+      private final static class Columns
+      {
+         final int[]           options;
+         final CanonicalGame[] games;
+         final int[]           offsets, birthdays;
+         final byte[]          flags;
+         final int             size;
+
+         Columns(int[] options, CanonicalGame[] games, int[] offsets, int[] birthdays, byte[] flags, int size)
          {
-            return false;
+            this.options = options;
+            this.games = games;
+            this.offsets = offsets;
+            this.birthdays = birthdays;
+            this.flags = flags;
+            this.size = size;
          }
-         for (int i = 0; i < leftOptions.length; i++)
+
+         CanonicalGame getGame(int id)
+         {
+            return games[id];
+         }
+
+         int getFlags(int id)
+         {
+            return flags[id];
+         }
+
+         // Gets the offset of the record of a game in options.
+         int getOffset(int id)
          {
-            if (!leftOptions[i].equals(ok.leftOptions[i]))
+            return offsets[id];
+         }
+
+         // Tests whether the game with the given ID has exactly these
+         // options, in this order.
+         boolean hasOptions(int id, CanonicalGame[] leftOptionArray, CanonicalGame[] rightOptionArray)
+         {
+            int offset = offsets[id];
+            if (options[offset] != leftOptionArray.length || options[offset + 1] != rightOptionArray.length)
             {
                return false;
             }
+            offset += 2;
+            for (int i = 0; i < leftOptionArray.length; i++, offset++)
+            {
+               if (options[offset] != leftOptionArray[i].id)
+               {
+                  return false;
+               }
+            }
+            for (int i = 0; i < rightOptionArray.length; i++, offset++)
+            {
+               if (options[offset] != rightOptionArray[i].id)
+               {
+                  return false;
+               }
+            }
+            return true;
          }
-         for (int i = 0; i < rightOptions.length; i++)
+      }
+
+      private volatile Columns columns = new Columns(new int[1 << 16], new CanonicalGame[1 << 12], new int[1 << 12], new int[1 << 12], new byte[1 << 12], 0);
+      // Only used by intern().
+      private int              optionsSize;
+      // The hash table, using linear probing. Entries are IDs plus one, 0
+      // for an empty slot; it is at most half full.
+      private volatile AtomicIntegerArray table = new AtomicIntegerArray(1 << 13);
+
+      // Returns the game with the specified options, or null if it does not
+      // exist. May miss a game that is being added by another thread.
+      public CanonicalGame find(CanonicalGame[] leftOptionArray, CanonicalGame[] rightOptionArray)
+      {
+         AtomicIntegerArray table = this.table;
+         int mask = table.length() - 1;
+         for (int i = hash(leftOptionArray, rightOptionArray) & mask;; i = (i + 1) & mask)
          {
-            if (!rightOptions[i].equals(ok.rightOptions[i]))
+            int entry = table.get(i);
+            if (entry == 0)
             {
-               return false;
+               return null;
+            }
+            // Loaded after reading the ID, so it holds the game
+            Columns columns = this.columns;
+            if (columns.hasOptions(entry - 1, leftOptionArray, rightOptionArray))
+            {
+               return columns.games[entry - 1];
             }
          }
-         return true;
       }
 
-      public int hashCode()
+      // Returns the game with the specified options, creating it if it does
+      // not exist yet.
+      public synchronized CanonicalGame intern(CanonicalGame[] leftOptionArray, CanonicalGame[] rightOptionArray, NusKey nusKey, int birthday)
       {
-         int hashCode = 1;
-         for (int i = 0; i < leftOptions.length; i++)
+         CanonicalGame g = find(leftOptionArray, rightOptionArray);
+         if (g != null)
          {
-            hashCode = 31 * hashCode + leftOptions[i].hashCode();
+            return g;
          }
-         for (int i = 0; i < rightOptions.length; i++)
+
+         Columns columns = this.columns;
+         int[] options = columns.options;
+         CanonicalGame[] games = columns.games;
+         int[] offsets = columns.offsets, birthdays = columns.birthdays;
+         byte[] flags = columns.flags;
+         int id = columns.size, length = 2 + leftOptionArray.length + rightOptionArray.length;
+         if (id == Integer.MAX_VALUE - 8 || length > Integer.MAX_VALUE - 8 - optionsSize)
          {
-            hashCode = 31 * hashCode + rightOptions[i].hashCode();
+            throw new IllegalStateException("The arena is full.");
+         }
+         if (optionsSize + length > options.length)
+         {
+            options = Arrays.copyOf(options, (int) Math.min(Math.max(2L * options.length, optionsSize + length), Integer.MAX_VALUE - 8));
+         }
+         if (id == games.length)
+         {
+            int capacity = (int) Math.min(2L * games.length, Integer.MAX_VALUE - 8);
+            games = Arrays.copyOf(games, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            birthdays = Arrays.copyOf(birthdays, capacity);
+            flags = Arrays.copyOf(flags, capacity);
          }
-         return hashCode;
-      }
-   }
 
-   // Instances of this class are used as hashtable keys for the operation
-   // cache. Currently only sums are cached; support for other operations
-   // might be added in the future.
-   private final static class OperationKey implements Serializable
-   {
-      public final static int OPERATION_TYPE_SUM = 0, OPERATION_TYPE_NORTON_PRODUCT = 1, OPERATION_TYPE_ATOMIC_WEIGHT = 2, OPERATION_TYPE_CONWAY_PRODUCT = 3;
+         int offset = optionsSize;
+         options[offset] = leftOptionArray.length;
+         options[offset + 1] = rightOptionArray.length;
+         for (int i = 0; i < leftOptionArray.length; i++)
+         {
+            options[offset + 2 + i] = leftOptionArray[i].id;
+         }
+         for (int i = 0; i < rightOptionArray.length; i++)
+         {
+            options[offset + 2 + leftOptionArray.length + i] = rightOptionArray[i].id;
+         }
+         optionsSize += length;
 
-      public int              operationType;
-      public CanonicalGame    g, h;
+         g = new CanonicalGame(id, nusKey);
+         games[id] = g;
+         offsets[id] = offset;
+         birthdays[id] = birthday;
+         if (nusKey != null)
+         {
+            flags[id] = (byte) (nusKey.upMultiple == 0 && nusKey.nimber == 0 ? NUMBER_UP_STAR | NUMBER : NUMBER_UP_STAR);
+         }
+         columns = new Columns(options, games, offsets, birthdays, flags, id + 1);
+         this.columns = columns;
 
-      public OperationKey(int initOperationType, CanonicalGame initG, CanonicalGame initH)
+         AtomicIntegerArray table = this.table;
+         if (2 * columns.size > table.length())
+         {
+            // Rehash into a table of twice the size, which other threads
+            // only see when it is complete.
+            AtomicIntegerArray newTable = new AtomicIntegerArray(2 * table.length());
+            for (int i = 0; i < id; i++)
+            {
+               insert(columns, newTable, i);
+            }
+            this.table = newTable;
+            table = newTable;
+         }
+         insert(columns, table, id);
+         return g;
+      }
+
+      private static void insert(Columns columns, AtomicIntegerArray table, int id)
       {
-         operationType = initOperationType;
-         g = initG;
-         h = initH;
+         int[] options = columns.options;
+         int mask = table.length() - 1, offset = columns.offsets[id], hash = 1;
+         for (int i = offset; i < offset + 2 + options[offset] + options[offset + 1]; i++)
+         {
+            hash = 31 * hash + options[i];
+         }
+         int i = mix(hash) & mask;
+         while (table.get(i) != 0)
+         {
+            i = (i + 1) & mask;
+         }
+         table.set(i, id + 1);
       }
 
-      public boolean equals(Object obj)
+      // Hashes a record: the numbers of options and the option IDs.
+      private static int hash(CanonicalGame[] leftOptionArray, CanonicalGame[] rightOptionArray)
       {
-         if (obj == null || !(obj instanceof OperationKey))
+         int hash = 31 * (31 + leftOptionArray.length) + rightOptionArray.length;
+         for (int i = 0; i < leftOptionArray.length; i++)
          {
-            return false;
+            hash = 31 * hash + leftOptionArray[i].id;
          }
-         OperationKey ok = (OperationKey) obj;
-         return operationType == ok.operationType && ((g == ok.g && h == ok.h) || (operationType == OPERATION_TYPE_SUM && g == ok.h && h == ok.g));
-         // (Sum is commutative!)
+         for (int i = 0; i < rightOptionArray.length; i++)
+         {
+            hash = 31 * hash + rightOptionArray[i].id;
+         }
+         return mix(hash);
       }
 
-      public int hashCode()
+      // Spreads the bits of a hash code, since IDs are consecutive.
+      private static int mix(int hash)
       {
-         return operationType + (g == null ? 0 : g.hashCode()) + (h == null ? 0 : h.hashCode());
+         hash *= 0x9E3779B9;
+         return hash ^ (hash >>> 16);
+      }
+
+      public int size()
+      {
+         return columns.size;
+      }
+
+      // Gets the columns of all games added so far. Must be read again to
+      // look at games added after the last read.
+      public Columns getColumns()
+      {
+         return columns;
+      }
+
+      public CanonicalGame getGame(int id)
+      {
+         return columns.games[id];
+      }
+
+      public int getBirthday(int id)
+      {
+         return columns.birthdays[id];
       }
+
+      public int getNumLeftOptions(int id)
+      {
+         Columns columns = this.columns;
+         return columns.options[columns.offsets[id]];
+      }
+
+      public int getNumRightOptions(int id)
+      {
+         Columns columns = this.columns;
+         return columns.options[columns.offsets[id] + 1];
+      }
+
+      // Does not check n.
+      public CanonicalGame getLeftOption(int id, int n)
+      {
+         Columns columns = this.columns;
+         return columns.games[columns.options[columns.offsets[id] + 2 + n]];
+      }
+
+      // Does not check n.
+      public CanonicalGame getRightOption(int id, int n)
+      {
+         Columns columns = this.columns;
+         int[] options = columns.options;
+         int offset = columns.offsets[id];
+         return columns.games[options[offset + 2 + options[offset] + n]];
+      }
+
+      // Returns a new array of the left (or right) options.
+      public CanonicalGame[] getOptions(int id, boolean left)
+      {
+         Columns columns = this.columns;
+         int[] options = columns.options;
+         int offset = columns.offsets[id], start = offset + 2 + (left ? 0 : options[offset]);
+         CanonicalGame[] optionArray = new CanonicalGame[left ? options[offset] : options[offset + 1]];
+         for (int i = 0; i < optionArray.length; i++)
+         {
+            optionArray[i] = columns.games[options[start + i]];
+         }
+         return optionArray;
+      }
+   }
+
+   // Gets the type of operation (OperationKey.OPERATION_TYPE_*) a primary
+   // cache key belongs to, or -1 if it is not an operation of this class.
+   static int getOperationType(Object cacheKey)
+   {
+      return cacheKey instanceof OperationKey ? ((OperationKey) cacheKey).operationType : -1;
    }
 
    // //////////////////////////////////////////////////////////////////////
    // Private static data (caches, etc.)
 
-   // The following three caches are maintained:
+   // The following caches are maintained:
    // nusCache maps a number-up-star combination to the corresponding
    // CanonicalGame.
-   // gameCache maps left and right option lists to the corresponding
+   // arena maps left and right option lists and IDs to the corresponding
    // CanonicalGame.
-   private static Map          nusCache, gameCache;
+   // Both may be used by several threads at once.
+   private final static ConcurrentMap<NusKey, CanonicalGame> nusCache = new ConcurrentHashMap<NusKey, CanonicalGame>(127);
 
-   private static List         idCatalog;
-   private static int          nextID;
+   private final static GameArena                            arena = new GameArena();
 
-   static
-   {
-      nusCache = new HashMap(127);
-      gameCache = new HashMap(2047);
-      idCatalog = new ArrayList(2047);
-      nextID = 0;
-   }
+   // leqCache remembers the results of leq, indexed by a hash of the IDs of
+   // both games. Every entry is a single long: the two IDs (31 bits each),
+   // then two bits of result (LEQ_TRUE or LEQ_FALSE, 0 for an empty entry).
+   // Colliding entries simply replace each other, so the cache never grows,
+   // and it is shared by all threads without locking since entries are read
+   // and written as a whole. Null if disabled.
+   private final static int           LEQ_FALSE = 1, LEQ_TRUE = 2;
+   public final static int            DEFAULT_COMPARISON_CACHE_SIZE = 1 << 18;
+   private static volatile AtomicLongArray leqCache = new AtomicLongArray(DEFAULT_COMPARISON_CACHE_SIZE);
 
    // //////////////////////////////////////////////////////////////////////
    // Constants.
@@ -227,11 +476,8 @@ public final class CanonicalGame implements StopperGame, Comparable
 
    static
    {
-      ZERO = new CanonicalGame();
-      ZERO.leftOptions = ZERO.rightOptions = new CanonicalGame[0];
-      ZERO.nusKey = new NusKey(new DyadicRational(0, 1), 0, 0);
-      nusCache.put(ZERO.nusKey, ZERO);
-      gameCache.put(new OptionsKey(ZERO.leftOptions, ZERO.rightOptions), ZERO);
+      CanonicalGame[] noOptions = new CanonicalGame[0];
+      ZERO = intern(noOptions, noOptions, new NusKey(new DyadicRational(0, 1), 0, 0), 0);
 
       STAR = fromNumberUpStar(DyadicRational.ZERO, 0, 1);
       UP = fromNumberUpStar(DyadicRational.ZERO, 1, 0);
@@ -243,20 +489,15 @@ public final class CanonicalGame implements StopperGame, Comparable
    // //////////////////////////////////////////////////////////////////////
    // Member data.
 
-   // Options are stored in arrays rather than Collections. This is done to
-   // keep the CanonicalGame class as fast and lean as possible.
-   private CanonicalGame[]      leftOptions, rightOptions;
+   // The options and birthday of this game are stored in the arena, indexed
+   // by its ID. This keeps the CanonicalGame class as lean as possible.
+
+   // A unique integer identifier for this game.
+   private final int            id;
 
    // If this game is a number-up-star, then nusKey contains the corresponding
    // hash key. Otherwise nusKey is null.
-   private NusKey               nusKey;
-
-   // This game's birthday. Note that this is calculated during object
-   // construction, so it is always valid.
-   private int                  birthday;
-
-   // A unique integer identifier for this game.
-   private int                  id;
+   private final NusKey         nusKey;
 
    // Various data are cached here when computed.
    private CanonicalGame        inverse;
@@ -265,10 +506,23 @@ public final class CanonicalGame implements StopperGame, Comparable
    // //////////////////////////////////////////////////////////////////////
    // Private constructor
 
-   private CanonicalGame()
+   private CanonicalGame(int id, NusKey nusKey)
+   {
+      this.id = id;
+      this.nusKey = nusKey;
+   }
+
+   // Returns the unique CanonicalGame with the specified options, creating it
+   // if it does not exist yet. If nusKey is null, detectShortcuts determines
+   // it.
+   private static CanonicalGame intern(CanonicalGame[] leftOptionArray, CanonicalGame[] rightOptionArray, NusKey nusKey, int birthday)
    {
-      id = nextID++;
-      idCatalog.add(this);
+      CanonicalGame g = arena.intern(leftOptionArray, rightOptionArray, nusKey == null ? detectShortcuts(leftOptionArray, rightOptionArray) : nusKey, birthday);
+      if (g.nusKey != null)
+      {
+         nusCache.putIfAbsent(g.nusKey, g);
+      }
+      return g;
    }
 
    // //////////////////////////////////////////////////////////////////////
@@ -276,12 +530,12 @@ public final class CanonicalGame implements StopperGame, Comparable
 
    public static CanonicalGame fromID(int id)
    {
-      if (id < 0 || id >= nextID)
+      CanonicalGame g = id < 0 || id >= arena.size() ? null : arena.getGame(id);
+      if (g == null)
       {
-         System.out.println(nextID);
          throw new IllegalArgumentException("id = " + id);
       }
-      return (CanonicalGame) idCatalog.get(id);
+      return g;
    }
 
    /**
@@ -307,18 +561,10 @@ public final class CanonicalGame implements StopperGame, Comparable
                break;
             }
          }
-         CanonicalGame g = (CanonicalGame) nusCache.get(nk);
+         CanonicalGame g = nusCache.get(nk);
          for (int i = lastDefined + 1; i <= number; i++)
          {
-            CanonicalGame h = new CanonicalGame();
-            h.leftOptions = new CanonicalGame[1];
-            h.leftOptions[0] = g;
-            h.rightOptions = new CanonicalGame[0];
-            h.nusKey = new NusKey(new DyadicRational(i, 1), 0, 0);
-            h.birthday = i;
-            nusCache.put(h.nusKey, h);
-            gameCache.put(new OptionsKey(h.leftOptions, h.rightOptions), h);
-            g = h;
+            g = intern(new CanonicalGame[] { g }, new CanonicalGame[0], new NusKey(new DyadicRational(i, 1), 0, 0), i);
          }
          return g;
       } else
@@ -332,18 +578,10 @@ public final class CanonicalGame implements StopperGame, Comparable
                break;
             }
          }
-         CanonicalGame g = (CanonicalGame) nusCache.get(nk);
+         CanonicalGame g = nusCache.get(nk);
          for (int i = lastDefined - 1; i >= number; i--)
          {
-            CanonicalGame h = new CanonicalGame();
-            h.leftOptions = new CanonicalGame[0];
-            h.rightOptions = new CanonicalGame[1];
-            h.rightOptions[0] = g;
-            h.nusKey = new NusKey(new DyadicRational(i, 1), 0, 0);
-            h.birthday = -i;
-            nusCache.put(h.nusKey, h);
-            gameCache.put(new OptionsKey(h.leftOptions, h.rightOptions), h);
-            g = h;
+            g = intern(new CanonicalGame[0], new CanonicalGame[] { g }, new NusKey(new DyadicRational(i, 1), 0, 0), -i);
          }
          return g;
       }
@@ -382,7 +620,7 @@ public final class CanonicalGame implements StopperGame, Comparable
       // We can check the cache before validating the inputs, to save time.
       // If a cache entry is found then the inputs must be valid anyway.
       NusKey nusKey = new NusKey(number, upMultiple, nimber);
-      CanonicalGame g = (CanonicalGame) nusCache.get(nusKey);
+      CanonicalGame g = nusCache.get(nusKey);
       if (g != null)
       {
          return g;
@@ -401,8 +639,10 @@ public final class CanonicalGame implements StopperGame, Comparable
          throw new IllegalArgumentException("nimber must be non-negative.");
       }
 
-      g = new CanonicalGame();
-      g.nusKey = nusKey;
+      // The options are determined first; the game itself is only created
+      // (or found, if another thread was faster) by intern.
+      CanonicalGame[] leftOptions, rightOptions;
+      int birthday;
       if (upMultiple == 0 && nimber == 0)
       {
          // Just a number.
@@ -412,63 +652,59 @@ public final class CanonicalGame implements StopperGame, Comparable
          } else
          // A number but not an integer.
          {
-            g = new CanonicalGame();
-            g.nusKey = nusKey;
-            g.leftOptions = new CanonicalGame[1];
-            g.rightOptions = new CanonicalGame[1];
+            leftOptions = new CanonicalGame[1];
+            rightOptions = new CanonicalGame[1];
             // To find the canonical left option, we subtract 1/denominator.
-            g.leftOptions[0] = fromNumberUpStar(new DyadicRational(number.getNumerator() - 1, number.getDenominator()), 0, 0);
+            leftOptions[0] = fromNumberUpStar(new DyadicRational(number.getNumerator() - 1, number.getDenominator()), 0, 0);
             // To find the canonical right option, we add 1/denominator.
-            g.rightOptions[0] = fromNumberUpStar(new DyadicRational(number.getNumerator() + 1, number.getDenominator()), 0, 0);
-            g.birthday = Math.max(g.leftOptions[0].birthday, g.rightOptions[0].birthday) + 1;
+            rightOptions[0] = fromNumberUpStar(new DyadicRational(number.getNumerator() + 1, number.getDenominator()), 0, 0);
+            birthday = Math.max(leftOptions[0].getBirthday(), rightOptions[0].getBirthday()) + 1;
          }
       } else if (upMultiple == 0)
       {
          // A number plus a nimber. First get the next lower nimber.
          CanonicalGame h = fromNumberUpStar(number, 0, nimber - 1);
-         g.leftOptions = new CanonicalGame[nimber];
-         g.rightOptions = g.leftOptions;
+         leftOptions = new CanonicalGame[nimber];
+         rightOptions = leftOptions;
          for (int i = 0; i < nimber - 1; i++)
          {
             // Copy all of the next lower nimber's options.
-            g.leftOptions[i] = h.leftOptions[i];
+            leftOptions[i] = h.getLeftOption(i);
          }
-         g.leftOptions[nimber - 1] = h;
-         g.birthday = h.birthday + 1;
+         leftOptions[nimber - 1] = h;
+         birthday = h.getBirthday() + 1;
       } else if (upMultiple == 1 && nimber == 1)
       {
          // ^* needs to be handled as a special case.
-         g.leftOptions = new CanonicalGame[2];
-         g.rightOptions = new CanonicalGame[1];
-         g.leftOptions[0] = g.rightOptions[0] = fromNumberUpStar(number, 0, 0);
-         g.leftOptions[1] = fromNumberUpStar(number, 0, 1);
-         g.birthday = g.leftOptions[1].birthday + 1;
+         leftOptions = new CanonicalGame[2];
+         rightOptions = new CanonicalGame[1];
+         leftOptions[0] = rightOptions[0] = fromNumberUpStar(number, 0, 0);
+         leftOptions[1] = fromNumberUpStar(number, 0, 1);
+         birthday = leftOptions[1].getBirthday() + 1;
       } else if (upMultiple == -1 && nimber == 1)
       {
          // Likewise with v*.
-         g.leftOptions = new CanonicalGame[1];
-         g.rightOptions = new CanonicalGame[2];
-         g.leftOptions[0] = g.rightOptions[0] = fromNumberUpStar(number, 0, 0);
-         g.rightOptions[1] = fromNumberUpStar(number, 0, 1);
-         g.birthday = g.rightOptions[1].birthday + 1;
+         leftOptions = new CanonicalGame[1];
+         rightOptions = new CanonicalGame[2];
+         leftOptions[0] = rightOptions[0] = fromNumberUpStar(number, 0, 0);
+         rightOptions[1] = fromNumberUpStar(number, 0, 1);
+         birthday = rightOptions[1].getBirthday() + 1;
       } else if (upMultiple > 0)
       {
-         g.leftOptions = new CanonicalGame[1];
-         g.rightOptions = new CanonicalGame[1];
-         g.leftOptions[0] = fromNumberUpStar(number, 0, 0);
-         g.rightOptions[0] = fromNumberUpStar(number, upMultiple - 1, nimber ^ 1);
-         g.birthday = g.rightOptions[0].birthday + 1;
+         leftOptions = new CanonicalGame[1];
+         rightOptions = new CanonicalGame[1];
+         leftOptions[0] = fromNumberUpStar(number, 0, 0);
+         rightOptions[0] = fromNumberUpStar(number, upMultiple - 1, nimber ^ 1);
+         birthday = rightOptions[0].getBirthday() + 1;
       } else
       {
-         g.leftOptions = new CanonicalGame[1];
-         g.rightOptions = new CanonicalGame[1];
-         g.leftOptions[0] = fromNumberUpStar(number, upMultiple + 1, nimber ^ 1);
-         g.rightOptions[0] = fromNumberUpStar(number, 0, 0);
-         g.birthday = g.leftOptions[0].birthday + 1;
+         leftOptions = new CanonicalGame[1];
+         rightOptions = new CanonicalGame[1];
+         leftOptions[0] = fromNumberUpStar(number, upMultiple + 1, nimber ^ 1);
+         rightOptions[0] = fromNumberUpStar(number, 0, 0);
+         birthday = leftOptions[0].getBirthday() + 1;
       }
-      nusCache.put(g.nusKey, g);
-      gameCache.put(new OptionsKey(g.leftOptions, g.rightOptions), g);
-      return g;
+      return intern(leftOptions, rightOptions, nusKey, birthday);
    }
 
    /**
@@ -525,16 +761,16 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public static CanonicalGame fromGNth(CanonicalGame g, int n)
    {
-      if (g.leftOptions.length != 1 || !g.leftOptions[0].equals(ZERO) || g.rightOptions.length != 1)
+      if (g.getNumLeftOptions() != 1 || !g.getLeftOption(0).equals(ZERO) || g.getNumRightOptions() != 1)
       {
          throw new IllegalArgumentException("g must be of the form {0|h}.");
       }
       if (n == 0)
       {
-         return (CanonicalGame) g.rightOptions[0].getInverse();
+         return (CanonicalGame) g.getRightOption(0).getInverse();
       } else
       {
-         return fromOptions(ZERO, g.rightOptions[0].minus(fromGToNth(g, n - 1)));
+         return fromOptions(ZERO, g.getRightOption(0).minus(fromGToNth(g, n - 1)));
       }
    }
 
@@ -560,7 +796,7 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public static CanonicalGame fromGToNth(CanonicalGame g, int n)
    {
-      if (g.leftOptions.length != 1 || !g.leftOptions[0].equals(ZERO) || g.rightOptions.length != 1)
+      if (g.getNumLeftOptions() != 1 || !g.getLeftOption(0).equals(ZERO) || g.getNumRightOptions() != 1)
       {
          throw new IllegalArgumentException("g must be of the form {0|h}.");
       }
@@ -569,7 +805,7 @@ public final class CanonicalGame implements StopperGame, Comparable
          return ZERO;
       } else
       {
-         return fromOptions(fromGToNth(g, n - 1), g.rightOptions[0]);
+         return fromOptions(fromGToNth(g, n - 1), g.getRightOption(0));
       }
    }
 
@@ -689,21 +925,15 @@ public final class CanonicalGame implements StopperGame, Comparable
    {
       Arrays.sort(leftOptionArray);
       Arrays.sort(rightOptionArray);
-      OptionsKey optionsKey = new OptionsKey(leftOptionArray, rightOptionArray);
-      CanonicalGame g = (CanonicalGame) gameCache.get(optionsKey);
+      CanonicalGame g = arena.find(leftOptionArray, rightOptionArray);
       if (g != null)
       {
          return g;
       }
 
-      // It's a new game!
-      g = new CanonicalGame();
-      g.leftOptions = leftOptionArray;
-      g.rightOptions = rightOptionArray;
-      g.birthday = Math.max(g.leftOptions.length == 0 ? -1 : g.leftOptions[g.leftOptions.length - 1].birthday, g.rightOptions.length == 0 ? -1 : g.rightOptions[g.rightOptions.length - 1].birthday) + 1;
-      g.detectShortcuts();
-      gameCache.put(optionsKey, g);
-      return g;
+      // It's a new game! (Unless another thread creates it first.)
+      int birthday = Math.max(leftOptionArray.length == 0 ? -1 : leftOptionArray[leftOptionArray.length - 1].getBirthday(), rightOptionArray.length == 0 ? -1 : rightOptionArray[rightOptionArray.length - 1].getBirthday()) + 1;
+      return intern(leftOptionArray, rightOptionArray, null, birthday);
    }
 
    /**
@@ -766,27 +996,28 @@ public final class CanonicalGame implements StopperGame, Comparable
 
       CanonicalGame h = (CanonicalGame) obj;
 
-      if (birthday < h.birthday)
+      int birthday = getBirthday(), hBirthday = h.getBirthday();
+      if (birthday < hBirthday)
       {
          return -1;
       }
-      if (birthday > h.birthday)
+      if (birthday > hBirthday)
       {
          return 1;
       }
-      if (leftOptions.length < h.leftOptions.length)
+      if (getNumLeftOptions() < h.getNumLeftOptions())
       {
          return -1;
       }
-      if (leftOptions.length > h.leftOptions.length)
+      if (getNumLeftOptions() > h.getNumLeftOptions())
       {
          return 1;
       }
-      if (rightOptions.length < h.rightOptions.length)
+      if (getNumRightOptions() < h.getNumRightOptions())
       {
          return -1;
       }
-      if (rightOptions.length > h.rightOptions.length)
+      if (getNumRightOptions() > h.getNumRightOptions())
       {
          return 1;
       }
@@ -849,28 +1080,28 @@ public final class CanonicalGame implements StopperGame, Comparable
       {
          // A tiny.
          s = "";
-         if (!leftOptions[0].equals(ZERO))
+         if (!getLeftOption(0).equals(ZERO))
          {
-            s += leftOptions[0].toString();
+            s += getLeftOption(0).toString();
          }
-         s += "Tiny(" + rightOptions[0].rightOptions[0].minus(leftOptions[0]).getInverse().toString() + ")";
+         s += "Tiny(" + getRightOption(0).getRightOption(0).minus(getLeftOption(0)).getInverse().toString() + ")";
       } else if (((CanonicalGame) getInverse()).isNumberTiny())
       {
          // A miny.
          s = "";
-         if (!rightOptions[0].equals(ZERO))
+         if (!getRightOption(0).equals(ZERO))
          {
-            s += rightOptions[0].toString();
+            s += getRightOption(0).toString();
          }
-         s += "Miny(" + leftOptions[0].leftOptions[0].minus(rightOptions[0]).toString() + ")";
+         s += "Miny(" + getLeftOption(0).getLeftOption(0).minus(getRightOption(0)).toString() + ")";
       } else
       {
          int[] optionHeight = new int[1];
          int leftHeight = 0, rightHeight = 0;
          String leftOptionString, rightOptionString;
-         if (leftOptions.length == 1)
+         if (getNumLeftOptions() == 1)
          {
-            leftOptionString = leftOptions[0].toString(optionHeight, bracketAll);
+            leftOptionString = getLeftOption(0).toString(optionHeight, bracketAll);
             leftHeight = optionHeight[0];
          } else
          {
@@ -878,9 +1109,9 @@ public final class CanonicalGame implements StopperGame, Comparable
             leftOptionString = "";
             // If there's more than one left option, we need to bracket each
             // left option of height > 0, and maxLeftHeight is automatically 0.
-            for (int i = 0; i < leftOptions.length; i++)
+            for (int i = 0; i < getNumLeftOptions(); i++)
             {
-               String t = leftOptions[i].toString(optionHeight, bracketAll);
+               String t = getLeftOption(i).toString(optionHeight, bracketAll);
                if (optionHeight[0] == 0)
                {
                   leftOptionString += t;
@@ -888,23 +1119,23 @@ public final class CanonicalGame implements StopperGame, Comparable
                {
                   leftOptionString += "{" + t + "}";
                }
-               if (i < leftOptions.length - 1)
+               if (i < getNumLeftOptions() - 1)
                {
                   leftOptionString += ",";
                }
             }
          }
-         if (rightOptions.length == 1)
+         if (getNumRightOptions() == 1)
          {
-            rightOptionString = rightOptions[0].toString(optionHeight, bracketAll);
+            rightOptionString = getRightOption(0).toString(optionHeight, bracketAll);
             rightHeight = optionHeight[0];
          } else
          {
             rightHeight = 0;
             rightOptionString = "";
-            for (int i = 0; i < rightOptions.length; i++)
+            for (int i = 0; i < getNumRightOptions(); i++)
             {
-               String t = rightOptions[i].toString(optionHeight, bracketAll);
+               String t = getRightOption(i).toString(optionHeight, bracketAll);
                if (optionHeight[0] == 0)
                {
                   rightOptionString += t;
@@ -912,7 +1143,7 @@ public final class CanonicalGame implements StopperGame, Comparable
                {
                   rightOptionString += "{" + t + "}";
                }
-               if (i < rightOptions.length - 1)
+               if (i < getNumRightOptions() - 1)
                {
                   rightOptionString += ",";
                }
@@ -961,12 +1192,12 @@ public final class CanonicalGame implements StopperGame, Comparable
 
    public Collection getLeftOptions()
    {
-      return Collections.unmodifiableCollection(Arrays.asList(leftOptions));
+      return Collections.unmodifiableCollection(Arrays.asList(getLeftOptionArray()));
    }
 
    public Collection getRightOptions()
    {
-      return Collections.unmodifiableCollection(Arrays.asList(rightOptions));
+      return Collections.unmodifiableCollection(Arrays.asList(getRightOptionArray()));
    }
 
    public Game getInverse()
@@ -981,15 +1212,15 @@ public final class CanonicalGame implements StopperGame, Comparable
          inverse = fromNumberUpStar(nusKey.number.getInverse(), -nusKey.upMultiple, nusKey.nimber);
       } else
       {
-         CanonicalGame[] newLeftOptions = new CanonicalGame[rightOptions.length], newRightOptions = new CanonicalGame[leftOptions.length];
+         CanonicalGame[] newLeftOptions = new CanonicalGame[getNumRightOptions()], newRightOptions = new CanonicalGame[getNumLeftOptions()];
 
          for (int i = 0; i < newLeftOptions.length; i++)
          {
-            newLeftOptions[i] = (CanonicalGame) rightOptions[i].getInverse();
+            newLeftOptions[i] = (CanonicalGame) getRightOption(i).getInverse();
          }
          for (int i = 0; i < newRightOptions.length; i++)
          {
-            newRightOptions[i] = (CanonicalGame) leftOptions[i].getInverse();
+            newRightOptions[i] = (CanonicalGame) getLeftOption(i).getInverse();
          }
          inverse = fromCanonicalOptions(newLeftOptions, newRightOptions);
       }
@@ -1073,7 +1304,7 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public int getBirthday()
    {
-      return birthday;
+      return arena.getBirthday(id);
    }
 
    /**
@@ -1110,15 +1341,15 @@ public final class CanonicalGame implements StopperGame, Comparable
          return fromNumberUpStar(getMean(), 0, 0);
       }
 
-      CanonicalGame[] newLeftOptions = new CanonicalGame[leftOptions.length], newRightOptions = new CanonicalGame[rightOptions.length];
+      CanonicalGame[] newLeftOptions = new CanonicalGame[getNumLeftOptions()], newRightOptions = new CanonicalGame[getNumRightOptions()];
 
-      for (int i = 0; i < leftOptions.length; i++)
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         newLeftOptions[i] = leftOptions[i].cool(t).minus(t);
+         newLeftOptions[i] = getLeftOption(i).cool(t).minus(t);
       }
-      for (int i = 0; i < rightOptions.length; i++)
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         newRightOptions[i] = rightOptions[i].cool(t).plus(t);
+         newRightOptions[i] = getRightOption(i).cool(t).plus(t);
       }
 
       return fromOptions(newLeftOptions, newRightOptions);
@@ -1156,15 +1387,15 @@ public final class CanonicalGame implements StopperGame, Comparable
          return this;
       }
 
-      CanonicalGame[] newLeftOptions = new CanonicalGame[leftOptions.length], newRightOptions = new CanonicalGame[rightOptions.length];
+      CanonicalGame[] newLeftOptions = new CanonicalGame[getNumLeftOptions()], newRightOptions = new CanonicalGame[getNumRightOptions()];
 
-      for (int i = 0; i < leftOptions.length; i++)
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         newLeftOptions[i] = leftOptions[i].heat(t).plus(t);
+         newLeftOptions[i] = getLeftOption(i).heat(t).plus(t);
       }
-      for (int i = 0; i < rightOptions.length; i++)
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         newRightOptions[i] = rightOptions[i].heat(t).minus(t);
+         newRightOptions[i] = getRightOption(i).heat(t).minus(t);
       }
 
       return fromOptions(newLeftOptions, newRightOptions);
@@ -1190,15 +1421,15 @@ public final class CanonicalGame implements StopperGame, Comparable
          return nortonProduct(s); // G copies of s
       }
 
-      CanonicalGame[] newLeftOptions = new CanonicalGame[leftOptions.length], newRightOptions = new CanonicalGame[rightOptions.length];
+      CanonicalGame[] newLeftOptions = new CanonicalGame[getNumLeftOptions()], newRightOptions = new CanonicalGame[getNumRightOptions()];
 
-      for (int i = 0; i < leftOptions.length; i++)
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         newLeftOptions[i] = leftOptions[i].overheat(s, t).plus(t);
+         newLeftOptions[i] = getLeftOption(i).overheat(s, t).plus(t);
       }
-      for (int i = 0; i < rightOptions.length; i++)
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         newRightOptions[i] = rightOptions[i].overheat(s, t).minus(t);
+         newRightOptions[i] = getRightOption(i).overheat(s, t).minus(t);
       }
 
       return fromOptions(newLeftOptions, newRightOptions);
@@ -1231,30 +1462,30 @@ public final class CanonicalGame implements StopperGame, Comparable
       // If this is G and the input is H, we want to return
       // { GL+H, G+HL | GR+H, G+HR }
 
-      int hStartLeftOption = isNumber() ? 0 : leftOptions.length, hStartRightOption = isNumber() ? 0 : rightOptions.length;
+      int hStartLeftOption = isNumber() ? 0 : getNumLeftOptions(), hStartRightOption = isNumber() ? 0 : getNumRightOptions();
 
-      CanonicalGame[] newLeftOptions = new CanonicalGame[hStartLeftOption + (h.isNumber() ? 0 : h.leftOptions.length)], newRightOptions = new CanonicalGame[hStartRightOption + (h.isNumber() ? 0 : h.rightOptions.length)];
+      CanonicalGame[] newLeftOptions = new CanonicalGame[hStartLeftOption + (h.isNumber() ? 0 : h.getNumLeftOptions())], newRightOptions = new CanonicalGame[hStartRightOption + (h.isNumber() ? 0 : h.getNumRightOptions())];
 
       if (!isNumber()) // By the number translation theorem
       {
-         for (int i = 0; i < leftOptions.length; i++)
+         for (int i = 0; i < getNumLeftOptions(); i++)
          {
-            newLeftOptions[i] = leftOptions[i].plus(h);
+            newLeftOptions[i] = getLeftOption(i).plus(h);
          }
-         for (int i = 0; i < rightOptions.length; i++)
+         for (int i = 0; i < getNumRightOptions(); i++)
          {
-            newRightOptions[i] = rightOptions[i].plus(h);
+            newRightOptions[i] = getRightOption(i).plus(h);
          }
       }
       if (!h.isNumber()) // By the number translation theorem
       {
-         for (int i = 0; i < h.leftOptions.length; i++)
+         for (int i = 0; i < h.getNumLeftOptions(); i++)
          {
-            newLeftOptions[i + hStartLeftOption] = plus(h.leftOptions[i]);
+            newLeftOptions[i + hStartLeftOption] = plus(h.getLeftOption(i));
          }
-         for (int i = 0; i < h.rightOptions.length; i++)
+         for (int i = 0; i < h.getNumRightOptions(); i++)
          {
-            newRightOptions[i + hStartRightOption] = plus(h.rightOptions[i]);
+            newRightOptions[i + hStartRightOption] = plus(h.getRightOption(i));
          }
       }
 
@@ -1290,10 +1521,10 @@ public final class CanonicalGame implements StopperGame, Comparable
       {
          return new Stop(nusKey.number, Stop.STOP_TYPE_LEFT);
       }
-      Stop leftStop = leftOptions[0].getRightStop();
-      for (int i = 1; i < leftOptions.length; i++)
+      Stop leftStop = getLeftOption(0).getRightStop();
+      for (int i = 1; i < getNumLeftOptions(); i++)
       {
-         Stop nextStop = leftOptions[i].getRightStop();
+         Stop nextStop = getLeftOption(i).getRightStop();
          if (leftStop.getStoppingValue().compareTo(nextStop.getStoppingValue()) < 0)
          {
             leftStop = nextStop;
@@ -1316,10 +1547,10 @@ public final class CanonicalGame implements StopperGame, Comparable
       {
          return new Stop(nusKey.number, Stop.STOP_TYPE_RIGHT);
       }
-      Stop rightStop = rightOptions[0].getLeftStop();
-      for (int i = 1; i < rightOptions.length; i++)
+      Stop rightStop = getRightOption(0).getLeftStop();
+      for (int i = 1; i < getNumRightOptions(); i++)
       {
-         Stop nextStop = rightOptions[i].getLeftStop();
+         Stop nextStop = getRightOption(i).getLeftStop();
          if (nextStop.getStoppingValue().compareTo(rightStop.getStoppingValue()) < 0)
          {
             rightStop = nextStop;
@@ -1338,13 +1569,13 @@ public final class CanonicalGame implements StopperGame, Comparable
          return nusKey.nimber + 1;
       }
       int farStar = 1;
-      for (int i = 0; i < leftOptions.length; i++)
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         farStar = Math.max(farStar, leftOptions[i].getFarStar());
+         farStar = Math.max(farStar, getLeftOption(i).getFarStar());
       }
-      for (int i = 0; i < rightOptions.length; i++)
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         farStar = Math.max(farStar, rightOptions[i].getFarStar());
+         farStar = Math.max(farStar, getRightOption(i).getFarStar());
       }
       return farStar;
    }
@@ -1419,20 +1650,23 @@ public final class CanonicalGame implements StopperGame, Comparable
 
       Map cache = Context.getActiveContext().getPrimaryCache();
       OperationKey ok = new OperationKey(OperationKey.OPERATION_TYPE_ATOMIC_WEIGHT, this, null);
-      if (cache.containsKey(ok))
+      // A single lookup, so a bounded cache cannot evict the entry between
+      // checking for it and getting it.
+      CanonicalGame cached = (CanonicalGame) cache.get(ok);
+      if (cached != null)
       {
-         return (CanonicalGame) cache.get(ok);
+         return cached;
       }
 
-      CanonicalGame[] newLeftOptions = new CanonicalGame[leftOptions.length];
-      CanonicalGame[] newRightOptions = new CanonicalGame[rightOptions.length];
+      CanonicalGame[] newLeftOptions = new CanonicalGame[getNumLeftOptions()];
+      CanonicalGame[] newRightOptions = new CanonicalGame[getNumRightOptions()];
       for (int i = 0; i < newLeftOptions.length; i++)
       {
-         newLeftOptions[i] = leftOptions[i].getNaiveAtomicWeight().plus(MINUS_TWO);
+         newLeftOptions[i] = getLeftOption(i).getNaiveAtomicWeight().plus(MINUS_TWO);
       }
       for (int i = 0; i < newRightOptions.length; i++)
       {
-         newRightOptions[i] = rightOptions[i].getNaiveAtomicWeight().plus(TWO);
+         newRightOptions[i] = getRightOption(i).getNaiveAtomicWeight().plus(TWO);
       }
       CanonicalGame g, g0 = fromOptions((CanonicalGame[]) newLeftOptions.clone(), (CanonicalGame[]) newRightOptions.clone());
       if (g0.isInteger())
@@ -1553,15 +1787,15 @@ public final class CanonicalGame implements StopperGame, Comparable
          return fromNumberUpStar(getNumberPart(), 0, 0);
       }
 
-      CanonicalGame[] newLeftOptions = new CanonicalGame[leftOptions.length], newRightOptions = new CanonicalGame[rightOptions.length];
+      CanonicalGame[] newLeftOptions = new CanonicalGame[getNumLeftOptions()], newRightOptions = new CanonicalGame[getNumRightOptions()];
 
-      for (int i = 0; i < leftOptions.length; i++)
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         newLeftOptions[i] = leftOptions[i].getStarProjection();
+         newLeftOptions[i] = getLeftOption(i).getStarProjection();
       }
-      for (int i = 0; i < rightOptions.length; i++)
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         newRightOptions[i] = rightOptions[i].getStarProjection();
+         newRightOptions[i] = getRightOption(i).getStarProjection();
       }
 
       return fromOptions(newLeftOptions, newRightOptions);
@@ -1584,12 +1818,41 @@ public final class CanonicalGame implements StopperGame, Comparable
 
    public boolean leq(CanonicalGame h)
    {
-      if (this == h)
+      return leq(id, h.id);
+   }
+
+   // Compares games by ID. The recursion works on the records and flags in
+   // the arena and only looks at the games themselves for number-up-stars.
+   private static boolean leq(int gId, int hId)
+   {
+      return leq(arena.getColumns(), gId, hId);
+   }
+
+   // The options of both games have smaller IDs, so one version of the
+   // columns holds every game the recursion looks at.
+   private static boolean leq(GameArena.Columns columns, int gId, int hId)
+   {
+      int gFlags = columns.getFlags(gId), hFlags = columns.getFlags(hId);
+      if (gId == hId)
       {
          return true;
-      } else if (nusKey != null && h.nusKey != null)
+      } else if ((gFlags & hFlags & GameArena.NUMBER_UP_STAR) != 0)
+      {
+         NusKey nusKey = columns.getGame(gId).nusKey, hNusKey = columns.getGame(hId).nusKey;
+         return nusKey.number.compareTo(hNusKey.number) < 0 || nusKey.number.equals(hNusKey.number) && (nusKey.upMultiple < hNusKey.upMultiple - 1 || nusKey.upMultiple < hNusKey.upMultiple && (nusKey.nimber ^ hNusKey.nimber) != 1);
+      }
+
+      AtomicLongArray cache = leqCache;
+      long key = ((long) gId << 31 | hId) << 2;
+      int index = 0;
+      if (cache != null)
       {
-         return nusKey.number.compareTo(h.nusKey.number) < 0 || nusKey.number.equals(h.nusKey.number) && (nusKey.upMultiple < h.nusKey.upMultiple - 1 || nusKey.upMultiple < h.nusKey.upMultiple && (nusKey.nimber ^ h.nusKey.nimber) != 1);
+         index = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (cache.length() - 1);
+         long entry = cache.get(index);
+         if ((entry & ~3L) == key)
+         {
+            return (entry & 3) == LEQ_TRUE;
+         }
       }
 
       boolean leq = true;
@@ -1597,22 +1860,26 @@ public final class CanonicalGame implements StopperGame, Comparable
       // Return false if H <= GL for some left option GL of G
       // or HR <= G for some right option HR of H.
       // Otherwise return true.
-      if (!isNumber()) // Number avoidance theorem
+      if ((gFlags & GameArena.NUMBER) == 0) // Number avoidance theorem
       {
-         for (int i = 0; i < leftOptions.length; i++)
+         int[] options = columns.options;
+         int offset = columns.getOffset(gId);
+         for (int i = offset + 2; i < offset + 2 + options[offset]; i++)
          {
-            if (h.leq(leftOptions[i]))
+            if (leq(columns, hId, options[i]))
             {
                leq = false;
                break;
             }
          }
       }
-      if (leq && !h.isNumber()) // Can skip this if leq is already false
+      if (leq && (hFlags & GameArena.NUMBER) == 0) // Can skip this if leq is already false
       {
-         for (int i = 0; i < h.rightOptions.length; i++)
+         int[] options = columns.options;
+         int offset = columns.getOffset(hId);
+         for (int i = offset + 2 + options[offset]; i < offset + 2 + options[offset] + options[offset + 1]; i++)
          {
-            if (h.rightOptions[i].leq(this))
+            if (leq(columns, options[i], gId))
             {
                leq = false;
                break;
@@ -1620,6 +1887,10 @@ public final class CanonicalGame implements StopperGame, Comparable
          }
       }
 
+      if (cache != null)
+      {
+         cache.lazySet(index, key | (leq ? LEQ_TRUE : LEQ_FALSE));
+      }
       return leq;
    }
 
@@ -1630,10 +1901,10 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public CanonicalGame[] getLeftIncentives()
    {
-      CanonicalGame[] incentives = new CanonicalGame[leftOptions.length];
-      for (int i = 0; i < leftOptions.length; i++)
+      CanonicalGame[] incentives = new CanonicalGame[getNumLeftOptions()];
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         incentives[i] = leftOptions[i].minus(this);
+         incentives[i] = getLeftOption(i).minus(this);
       }
       eliminateDuplicateOptions(incentives);
       eliminateDominatedOptions(incentives, true);
@@ -1647,10 +1918,10 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public CanonicalGame[] getRightIncentives()
    {
-      CanonicalGame[] incentives = new CanonicalGame[rightOptions.length];
-      for (int i = 0; i < rightOptions.length; i++)
+      CanonicalGame[] incentives = new CanonicalGame[getNumRightOptions()];
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         incentives[i] = this.minus(rightOptions[i]);
+         incentives[i] = this.minus(getRightOption(i));
       }
       eliminateDuplicateOptions(incentives);
       eliminateDominatedOptions(incentives, true);
@@ -1664,14 +1935,14 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public CanonicalGame[] getIncentives()
    {
-      CanonicalGame[] incentives = new CanonicalGame[leftOptions.length + rightOptions.length];
-      for (int i = 0; i < leftOptions.length; i++)
+      CanonicalGame[] incentives = new CanonicalGame[getNumLeftOptions() + getNumRightOptions()];
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         incentives[i] = leftOptions[i].minus(this);
+         incentives[i] = getLeftOption(i).minus(this);
       }
-      for (int i = 0; i < rightOptions.length; i++)
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         incentives[leftOptions.length + i] = this.minus(rightOptions[i]);
+         incentives[getNumLeftOptions() + i] = this.minus(getRightOption(i));
       }
       eliminateDuplicateOptions(incentives);
       eliminateDominatedOptions(incentives, true);
@@ -1696,9 +1967,12 @@ public final class CanonicalGame implements StopperGame, Comparable
       Map cache = Context.getActiveContext().getPrimaryCache();
       OperationKey ok = new OperationKey(OperationKey.OPERATION_TYPE_NORTON_PRODUCT, this, u);
 
-      if (cache.containsKey(ok))
+      // A single lookup, so a bounded cache cannot evict the entry between
+      // checking for it and getting it.
+      CanonicalGame cached = (CanonicalGame) cache.get(ok);
+      if (cached != null)
       {
-         return (CanonicalGame) cache.get(ok);
+         return cached;
       }
 
       CanonicalGame g = ZERO;
@@ -1727,19 +2001,19 @@ public final class CanonicalGame implements StopperGame, Comparable
          {
             uPlusIncentives[i] = u.plus(uPlusIncentives[i]);
          }
-         CanonicalGame[] newLeftOptions = new CanonicalGame[leftOptions.length * uPlusIncentives.length], newRightOptions = new CanonicalGame[rightOptions.length * uPlusIncentives.length];
+         CanonicalGame[] newLeftOptions = new CanonicalGame[getNumLeftOptions() * uPlusIncentives.length], newRightOptions = new CanonicalGame[getNumRightOptions() * uPlusIncentives.length];
 
-         for (int i = 0; i < leftOptions.length; i++)
+         for (int i = 0; i < getNumLeftOptions(); i++)
          {
-            CanonicalGame glDotU = leftOptions[i].nortonProduct(u);
+            CanonicalGame glDotU = getLeftOption(i).nortonProduct(u);
             for (int j = 0; j < uPlusIncentives.length; j++)
             {
                newLeftOptions[i * uPlusIncentives.length + j] = glDotU.plus(uPlusIncentives[j]);
             }
          }
-         for (int i = 0; i < rightOptions.length; i++)
+         for (int i = 0; i < getNumRightOptions(); i++)
          {
-            CanonicalGame grDotU = rightOptions[i].nortonProduct(u);
+            CanonicalGame grDotU = getRightOption(i).nortonProduct(u);
             for (int j = 0; j < uPlusIncentives.length; j++)
             {
                newRightOptions[i * uPlusIncentives.length + j] = grDotU.minus(uPlusIncentives[j]);
@@ -1766,40 +2040,43 @@ public final class CanonicalGame implements StopperGame, Comparable
       Map cache = Context.getActiveContext().getPrimaryCache();
       OperationKey ok = new OperationKey(OperationKey.OPERATION_TYPE_CONWAY_PRODUCT, this, h);
 
-      if (cache.containsKey(ok))
+      // A single lookup, so a bounded cache cannot evict the entry between
+      // checking for it and getting it.
+      CanonicalGame cached = (CanonicalGame) cache.get(ok);
+      if (cached != null)
       {
-         return (CanonicalGame) cache.get(ok);
+         return cached;
       }
 
-      int ll = leftOptions.length, rl = rightOptions.length, hll = h.leftOptions.length, hrl = h.rightOptions.length;
+      int ll = getNumLeftOptions(), rl = getNumRightOptions(), hll = h.getNumLeftOptions(), hrl = h.getNumRightOptions();
       CanonicalGame newLeftOptions[] = new CanonicalGame[ll * hll + rl * hrl], newRightOptions[] = new CanonicalGame[ll * hrl + rl * hll];
 
       for (int i = 0; i < ll; i++)
       {
          for (int j = 0; j < hll; j++)
          {
-            newLeftOptions[i * hll + j] = leftOptions[i].conwayProduct(h).plus(conwayProduct(h.leftOptions[j])).minus(leftOptions[i].conwayProduct(h.leftOptions[j]));
+            newLeftOptions[i * hll + j] = getLeftOption(i).conwayProduct(h).plus(conwayProduct(h.getLeftOption(j))).minus(getLeftOption(i).conwayProduct(h.getLeftOption(j)));
          }
       }
       for (int i = 0; i < rl; i++)
       {
          for (int j = 0; j < hrl; j++)
          {
-            newLeftOptions[ll * hll + i * hrl + j] = rightOptions[i].conwayProduct(h).plus(conwayProduct(h.rightOptions[j])).minus(rightOptions[i].conwayProduct(h.rightOptions[j]));
+            newLeftOptions[ll * hll + i * hrl + j] = getRightOption(i).conwayProduct(h).plus(conwayProduct(h.getRightOption(j))).minus(getRightOption(i).conwayProduct(h.getRightOption(j)));
          }
       }
       for (int i = 0; i < ll; i++)
       {
          for (int j = 0; j < hrl; j++)
          {
-            newRightOptions[i * hrl + j] = leftOptions[i].conwayProduct(h).plus(conwayProduct(h.rightOptions[j])).minus(leftOptions[i].conwayProduct(h.rightOptions[j]));
+            newRightOptions[i * hrl + j] = getLeftOption(i).conwayProduct(h).plus(conwayProduct(h.getRightOption(j))).minus(getLeftOption(i).conwayProduct(h.getRightOption(j)));
          }
       }
       for (int i = 0; i < rl; i++)
       {
          for (int j = 0; j < hll; j++)
          {
-            newRightOptions[ll * hrl + i * hll + j] = rightOptions[i].conwayProduct(h).plus(conwayProduct(h.leftOptions[j])).minus(rightOptions[i].conwayProduct(h.leftOptions[j]));
+            newRightOptions[ll * hrl + i * hll + j] = getRightOption(i).conwayProduct(h).plus(conwayProduct(h.getLeftOption(j))).minus(getRightOption(i).conwayProduct(h.getLeftOption(j)));
          }
       }
       CanonicalGame product = fromOptions(newLeftOptions, newRightOptions);
@@ -1818,16 +2095,16 @@ public final class CanonicalGame implements StopperGame, Comparable
       {
          return nusKey.number.equals(DyadicRational.ZERO);
       }
-      for (int i = 0; i < leftOptions.length; i++)
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         if (!leftOptions[i].isAllSmall())
+         if (!getLeftOption(i).isAllSmall())
          {
             return false;
          }
       }
-      for (int i = 0; i < rightOptions.length; i++)
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         if (!rightOptions[i].isAllSmall())
+         if (!getRightOption(i).isAllSmall())
          {
             return false;
          }
@@ -1837,25 +2114,25 @@ public final class CanonicalGame implements StopperGame, Comparable
 
    public CanonicalGame[] orthodoxLeftOptions()
    {
-      return findOrthodoxOptions(leftOptions, true);
+      return findOrthodoxOptions(getLeftOptionArray(), true);
    }
 
    public CanonicalGame[] orthodoxRightOptions()
    {
-      return findOrthodoxOptions(rightOptions, false);
+      return findOrthodoxOptions(getRightOptionArray(), false);
    }
 
    public CanonicalGame orthodoxForm()
    {
-      CanonicalGame[] leftOrthodoxForms = new CanonicalGame[leftOptions.length];
-      CanonicalGame[] rightOrthodoxForms = new CanonicalGame[rightOptions.length];
-      for (int i = 0; i < leftOptions.length; i++)
+      CanonicalGame[] leftOrthodoxForms = new CanonicalGame[getNumLeftOptions()];
+      CanonicalGame[] rightOrthodoxForms = new CanonicalGame[getNumRightOptions()];
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         leftOrthodoxForms[i] = leftOptions[i].orthodoxForm();
+         leftOrthodoxForms[i] = getLeftOption(i).orthodoxForm();
       }
-      for (int i = 0; i < rightOptions.length; i++)
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         rightOrthodoxForms[i] = rightOptions[i].orthodoxForm();
+         rightOrthodoxForms[i] = getRightOption(i).orthodoxForm();
       }
       return CanonicalGame.fromOptions(findOrthodoxOptions(leftOrthodoxForms, true), findOrthodoxOptions(rightOrthodoxForms, false));
    }
@@ -1932,7 +2209,7 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public int getNumLeftOptions()
    {
-      return leftOptions.length;
+      return arena.getNumLeftOptions(id);
    }
 
    /**
@@ -1946,11 +2223,11 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public CanonicalGame getLeftOption(int n)
    {
-      if (n < 0 || n >= leftOptions.length)
+      if (n < 0 || n >= getNumLeftOptions())
       {
          throw new IndexOutOfBoundsException("n");
       }
-      return leftOptions[n];
+      return arena.getLeftOption(id, n);
    }
 
    /**
@@ -1960,7 +2237,7 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public int getNumRightOptions()
    {
-      return rightOptions.length;
+      return arena.getNumRightOptions(id);
    }
 
    /**
@@ -1974,11 +2251,23 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public CanonicalGame getRightOption(int n)
    {
-      if (n < 0 || n >= rightOptions.length)
+      if (n < 0 || n >= getNumRightOptions())
       {
          throw new IndexOutOfBoundsException("n");
       }
-      return rightOptions[n];
+      return arena.getRightOption(id, n);
+   }
+
+   // Returns a new array of the left options of this game.
+   private CanonicalGame[] getLeftOptionArray()
+   {
+      return arena.getOptions(id, true);
+   }
+
+   // Returns a new array of the right options of this game.
+   private CanonicalGame[] getRightOptionArray()
+   {
+      return arena.getOptions(id, false);
    }
 
    /**
@@ -2078,11 +2367,11 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public boolean isNumberMiny()
    {
-      if (leftOptions.length != 1 || rightOptions.length != 1 || !rightOptions[0].isNumber() || leftOptions[0].leftOptions.length != 1 || leftOptions[0].rightOptions.length != 1 || rightOptions[0] != leftOptions[0].rightOptions[0])
+      if (getNumLeftOptions() != 1 || getNumRightOptions() != 1 || !getRightOption(0).isNumber() || getLeftOption(0).getNumLeftOptions() != 1 || getLeftOption(0).getNumRightOptions() != 1 || getRightOption(0) != getLeftOption(0).getRightOption(0))
       {
          return false;
       }
-      return (leftOptions[0].leftOptions[0].getRightStop().getStoppingValue().compareTo(rightOptions[0].getNumberPart()) > 0);
+      return (getLeftOption(0).getLeftOption(0).getRightStop().getStoppingValue().compareTo(getRightOption(0).getNumberPart()) > 0);
    }
 
    /**
@@ -2092,11 +2381,11 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public boolean isNumberTiny()
    {
-      if (leftOptions.length != 1 || rightOptions.length != 1 || !leftOptions[0].isNumber() || rightOptions[0].leftOptions.length != 1 || rightOptions[0].rightOptions.length != 1 || leftOptions[0] != rightOptions[0].leftOptions[0])
+      if (getNumLeftOptions() != 1 || getNumRightOptions() != 1 || !getLeftOption(0).isNumber() || getRightOption(0).getNumLeftOptions() != 1 || getRightOption(0).getNumRightOptions() != 1 || getLeftOption(0) != getRightOption(0).getLeftOption(0))
       {
          return false;
       }
-      return (rightOptions[0].rightOptions[0].getLeftStop().getStoppingValue().compareTo(leftOptions[0].getNumberPart()) < 0);
+      return (getRightOption(0).getRightOption(0).getLeftStop().getStoppingValue().compareTo(getLeftOption(0).getNumberPart()) < 0);
    }
 
    /**
@@ -2108,16 +2397,17 @@ public final class CanonicalGame implements StopperGame, Comparable
     */
    public boolean isSwitch()
    {
-      if (leftOptions.length != rightOptions.length)
+      if (getNumLeftOptions() != getNumRightOptions())
       {
          return false;
       }
 
       // We cannot simply test the left and right option arrays against each
       // other - there's no guarantee they are properly ordered.
-      for (int i = 0; i < leftOptions.length; i++)
+      CanonicalGame[] rightOptionArray = getRightOptionArray();
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         if (Arrays.binarySearch(rightOptions, leftOptions[i].getInverse()) < 0)
+         if (Arrays.binarySearch(rightOptionArray, getLeftOption(i).getInverse()) < 0)
          {
             return false;
          }
@@ -2185,9 +2475,26 @@ public final class CanonicalGame implements StopperGame, Comparable
       }
    }
 
+   /**
+    * Sets the number of comparison results remembered by {@link #leq(CanonicalGame) leq}.
+    * The cache is cleared.
+    * 
+    * @param entries
+    *           The number of entries, rounded down to a power of two, or 0 to
+    *           disable the cache. Every entry takes 8 bytes.
+    */
+   public static void setComparisonCacheSize(int entries)
+   {
+      if (entries < 0)
+      {
+         throw new IllegalArgumentException("entries must be non-negative.");
+      }
+      leqCache = entries == 0 ? null : new AtomicLongArray(Integer.highestOneBit(entries));
+   }
+
    public static String createReport()
    {
-      return "Number of Distinct Canonical Games: " + gameCache.size() + "\n" + "Number of Games of Form m^n*k: " + nusCache.size() + "\n";
+      return "Number of Distinct Canonical Games: " + arena.size() + "\n" + "Number of Games of Form m^n*k: " + nusCache.size() + "\n";
    }
 
    // //////////////////////////////////////////////////////////////////////
@@ -2199,9 +2506,9 @@ public final class CanonicalGame implements StopperGame, Comparable
       // or HR <= G for some right option HR of H.
       // Otherwise return true.
 
-      for (int i = 0; i < leftOptions.length; i++)
+      for (int i = 0; i < getNumLeftOptions(); i++)
       {
-         if (leftOptions[i].geqArrays(leftOptionArray, rightOptionArray))
+         if (getLeftOption(i).geqArrays(leftOptionArray, rightOptionArray))
          {
             return false;
          }
@@ -2221,9 +2528,9 @@ public final class CanonicalGame implements StopperGame, Comparable
       // Return false if GR <= H or G <= HL
       // Otherwise return true.
 
-      for (int i = 0; i < rightOptions.length; i++)
+      for (int i = 0; i < getNumRightOptions(); i++)
       {
-         if (rightOptions[i].leqArrays(leftOptionArray, rightOptionArray))
+         if (getRightOption(i).leqArrays(leftOptionArray, rightOptionArray))
          {
             return false;
          }
@@ -2290,11 +2597,11 @@ public final class CanonicalGame implements StopperGame, Comparable
       for (int i = 0; i < leftOptionArray.length; i++)
       {
          if (leftOptionArray[i] != null)
-            for (int j = 0; j < leftOptionArray[i].rightOptions.length; j++)
+            for (int j = 0; j < leftOptionArray[i].getNumRightOptions(); j++)
             {
-               if (leftOptionArray[i].rightOptions[j].leqArrays(leftOptionArray, rightOptionArray))
+               if (leftOptionArray[i].getRightOption(j).leqArrays(leftOptionArray, rightOptionArray))
                {
-                  CanonicalGame[] extraLeftOptions = leftOptionArray[i].rightOptions[j].leftOptions;
+                  CanonicalGame[] extraLeftOptions = leftOptionArray[i].getRightOption(j).getLeftOptionArray();
                   CanonicalGame[] newLeftOptionArray = new CanonicalGame[leftOptionArray.length - 1 + extraLeftOptions.length];
                   for (int k = 0; k < i; k++)
                   {
@@ -2325,11 +2632,11 @@ public final class CanonicalGame implements StopperGame, Comparable
       for (int i = 0; i < rightOptionArray.length; i++)
       {
          if (rightOptionArray[i] != null)
-            for (int j = 0; j < rightOptionArray[i].leftOptions.length; j++)
+            for (int j = 0; j < rightOptionArray[i].getNumLeftOptions(); j++)
             {
-               if (rightOptionArray[i].leftOptions[j].geqArrays(leftOptionArray, rightOptionArray))
+               if (rightOptionArray[i].getLeftOption(j).geqArrays(leftOptionArray, rightOptionArray))
                {
-                  CanonicalGame[] extraRightOptions = rightOptionArray[i].leftOptions[j].rightOptions;
+                  CanonicalGame[] extraRightOptions = rightOptionArray[i].getLeftOption(j).getRightOptionArray();
                   CanonicalGame[] newRightOptionArray = new CanonicalGame[rightOptionArray.length - 1 + extraRightOptions.length];
                   for (int k = 0; k < i; k++)
                   {
@@ -2377,8 +2684,9 @@ public final class CanonicalGame implements StopperGame, Comparable
       return packedOptions;
    }
 
-   // Detects whether this is a number-up-star, etc.
-   private void detectShortcuts()
+   // Detects whether the game with these options is a number-up-star, etc.
+   // and returns its nusKey, or null.
+   private static NusKey detectShortcuts(CanonicalGame[] leftOptions, CanonicalGame[] rightOptions)
    {
       if (leftOptions.length == 0)
       {
@@ -2386,34 +2694,34 @@ public final class CanonicalGame implements StopperGame, Comparable
          // option list must be of length 1 with the unique element an
          // integer. Also this can never be 0 - since 0 is automatically
          // part of the game cache.
-         nusKey = new NusKey(rightOptions[0].getNumberPart().plus(-1), 0, 0);
+         return new NusKey(rightOptions[0].getNumberPart().plus(-1), 0, 0);
       } else if (rightOptions.length == 0)
       {
-         nusKey = new NusKey(leftOptions[0].getNumberPart().plus(1), 0, 0);
+         return new NusKey(leftOptions[0].getNumberPart().plus(1), 0, 0);
       } else if (leftOptions.length == 1 && rightOptions.length == 1 && leftOptions[0].isNumber() && rightOptions[0].isNumber() && leftOptions[0].getNumberPart().compareTo(rightOptions[0].getNumberPart()) < 0)
       {
          // We're a number but not an integer. Conveniently, since the
          // option lists are canonicalized, the value of this game is the
          // mean of its left & right options.
-         nusKey = new NusKey(DyadicRational.mean(leftOptions[0].getNumberPart(), rightOptions[0].getNumberPart()), 0, 0);
+         return new NusKey(DyadicRational.mean(leftOptions[0].getNumberPart(), rightOptions[0].getNumberPart()), 0, 0);
       } else if (leftOptions.length == 2 && rightOptions.length == 1 && leftOptions[0].isNumber() && leftOptions[0].equals(rightOptions[0]) && leftOptions[1].isNumberUpStar() && leftOptions[0].getNumberPart().equals(leftOptions[1].getNumberPart()) && leftOptions[1].getUpMultiplePart() == 0 && leftOptions[1].getNimberPart() == 1)
       {
          // For some number n, the form of this game is {n,n*|n} = n^*.
-         nusKey = new NusKey(leftOptions[0].getNumberPart(), 1, 1);
+         return new NusKey(leftOptions[0].getNumberPart(), 1, 1);
       } else if (leftOptions.length == 1 && rightOptions.length == 2 && leftOptions[0].isNumber() && leftOptions[0].equals(rightOptions[0]) && rightOptions[1].isNumberUpStar() && rightOptions[0].getNumberPart().equals(rightOptions[1].getNumberPart()) && rightOptions[1].getUpMultiplePart() == 0 && rightOptions[1].getNimberPart() == 1)
       {
          // For some number n, the form of this game is {n|n,n*} = nv*.
-         nusKey = new NusKey(leftOptions[0].getNumberPart(), -1, 1);
+         return new NusKey(leftOptions[0].getNumberPart(), -1, 1);
       } else if (leftOptions.length == 1 && rightOptions.length == 1 && leftOptions[0].isNumber() && rightOptions[0].isNumberUpStar() && !rightOptions[0].isNumber() && leftOptions[0].getNumberPart().equals(rightOptions[0].getNumberPart()) && rightOptions[0].getUpMultiplePart() >= 0)
       {
          // This is of the form n + {0|G} where G is a number-up-star of up
          // multiple >= 0.
-         nusKey = new NusKey(rightOptions[0].getNumberPart(), rightOptions[0].getUpMultiplePart() + 1, rightOptions[0].getNimberPart() ^ 1);
+         return new NusKey(rightOptions[0].getNumberPart(), rightOptions[0].getUpMultiplePart() + 1, rightOptions[0].getNimberPart() ^ 1);
       } else if (leftOptions.length == 1 && rightOptions.length == 1 && rightOptions[0].isNumber() && leftOptions[0].isNumberUpStar() && !leftOptions[0].isNumber() && leftOptions[0].getNumberPart().equals(rightOptions[0].getNumberPart()) && leftOptions[0].getUpMultiplePart() <= 0)
       {
          // This is of the form n + {G|0} where G is a number-up-star of up
          // multiple <= 0.
-         nusKey = new NusKey(leftOptions[0].getNumberPart(), leftOptions[0].getUpMultiplePart() - 1, leftOptions[0].getNimberPart() ^ 1);
+         return new NusKey(leftOptions[0].getNumberPart(), leftOptions[0].getUpMultiplePart() - 1, leftOptions[0].getNimberPart() ^ 1);
       } else if (leftOptions.length >= 1 && rightOptions.length >= 1 && leftOptions.length == rightOptions.length && leftOptions[0].isNumber() && leftOptions[0].equals(rightOptions[0]))
       {
          // Last we need to check for games of the form n + *k.
@@ -2429,14 +2737,10 @@ public final class CanonicalGame implements StopperGame, Comparable
          }
          if (isNimber)
          {
-            rightOptions = leftOptions; // Save some space.
-            nusKey = new NusKey(mainNumber, 0, leftOptions.length);
+            return new NusKey(mainNumber, 0, leftOptions.length);
          }
       }
-      if (nusKey != null)
-      {
-         nusCache.put(nusKey, this);
-      }
+      return null;
    }
 
    // Thermography: Mean and temperature calculations. Right now these work
@@ -144,7 +144,9 @@ public abstract class Context
 
     public static class DefaultContext extends Context
     {
-        Map primaryCache = new java.util.HashMap(1023);
+        // Concurrent, since the threads of a parallel calculation all use
+        // the primary cache (CanonicalGame memoizes sums and products in it).
+        Map primaryCache = new java.util.concurrent.ConcurrentHashMap(1023);
         Comparator gameComparator = new Comparator()
         {
             public int compare(Object o1, Object o2)
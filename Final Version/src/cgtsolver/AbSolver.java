@@ -1,12 +1,33 @@
 package cgtsolver;
 
-import java.util.Collections;
-import java.util.Comparator;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Enhanced Alpha-Beta solver for the game Triomineering. Uses move ordering
  * algorithm and transposition tables (also making use of symmetry).
+ * <p>
+ * With more than one thread, the searches for both starting players run
+ * concurrently and the moves at each root are searched as separate fork/join
+ * tasks, which are abandoned as soon as a winning root move is found.
+ * Alternatively, in lazy SMP mode all threads search the same root with
+ * slightly different move orderings and share their results through one
+ * transposition table; the first thread to finish decides the search. The
+ * Young Brothers Wait mode splits the tree itself: the best ordered child of a
+ * node is searched first, then its younger brothers in parallel, all of which
+ * are abandoned as soon as one of them refutes the node.
  *
  * @author daniel
  */
@@ -16,7 +37,17 @@ public class AbSolver
    * Counts the number of nodes explored during search. Good indicator for
    * pruning improvements.
    */
-  protected int nodeCounter = 0;
+  protected long nodeCounter = 0;
+
+  /**
+   * Counters of the running or last search, updated by the searching thread.
+   */
+  protected SearchMetrics metrics = new SearchMetrics();
+
+  /**
+   * The metrics of the running or last search as seen by other threads.
+   */
+  private volatile SearchMetrics publishedMetrics = metrics;
 
   /**
    * Stores the duration of the last search with this solver instance.
@@ -24,10 +55,141 @@ public class AbSolver
   protected long lastCalcDuration;
 
   /**
-   * Transposition table to be used per search on an empty board.
+   * Transposition table, kept for later searches on boards of the same size.
    */
   protected ZobristTranspositionTable zorbistTranspositionTable;
 
+  /**
+   * Outcomes of the positions searched by the binary search, kept like the
+   * transposition table. Null unless the last search was a binary one, in
+   * which case there is no transposition table.
+   */
+  protected OutcomeTable outcomeTable;
+
+  /**
+   * Zobrist keys of the table in use: those of the transposition table, or
+   * keys of their own for the outcome table.
+   */
+  protected ZobristKeys zobristKeys;
+
+  /**
+   * Whether sequential searches only decide if the player to move wins (see
+   * {@link #isWin(GameState, int)}) instead of running alpha-beta.
+   */
+  protected boolean binarySearch;
+
+  /**
+   * Memory in megabytes reserved for the transposition table.
+   */
+  protected int transpositionTableSizeMb;
+
+  /**
+   * File keeping the transposition table between runs, null to keep it in
+   * memory only.
+   */
+  protected File transpositionTableFile;
+
+  /**
+   * Whether a search prints its results.
+   */
+  protected boolean printResults = true;
+
+  /**
+   * Number of threads used per search.
+   */
+  protected int threadCount;
+
+  /**
+   * How the work is distributed among the threads.
+   */
+  protected ParallelMode parallelMode = ParallelMode.ROOT_SPLIT;
+
+  /**
+   * Depth up to which the Young Brothers Wait mode searches brothers in
+   * parallel. Deeper subtrees are searched sequentially by one thread.
+   */
+  protected int splitDepth = DEFAULT_SPLIT_DEPTH;
+
+  /**
+   * State of the random tie breaking in move ordering, zero for a strict
+   * ordering. Lets the threads of a lazy SMP search explore the tree in
+   * different orders.
+   */
+  protected long orderingNoise;
+
+  /**
+   * Positions with at most this many free tiles are split into independent
+   * regions, which are solved as a sum of combinatorial games instead of
+   * searching their moves interleaved. Zero disables the decomposition.
+   */
+  protected int regionTiles = DEFAULT_REGION_TILES;
+
+  /**
+   * Computes and caches the values of regions, shared by all threads of a
+   * search.
+   */
+  protected RegionSolver regionSolver = new RegionSolver();
+
+  /**
+   * Whether to look up all children of a position in the transposition table
+   * before searching any of them (enhanced transposition cutoffs), so a child
+   * already known to be lost for the opponent decides the position at once.
+   */
+  protected boolean enhancedTranspositionCutoffs
+          = DEFAULT_ENHANCED_TRANSPOSITION_CUTOFFS;
+
+  /**
+   * Set as soon as the root search this solver works for is decided, so the
+   * remaining work can be abandoned. Null if the solver is not part of a
+   * parallel search.
+   */
+  protected StopSignal stopFlag;
+
+  /**
+   * Whether this solver searches part of a parallel search, whose
+   * transposition table statistics are published by the parallel solver.
+   */
+  private boolean worker;
+
+  /**
+   * Moves and their move ordering values per ply, reused by all nodes searched
+   * at that ply so the search does not allocate.
+   */
+  private int[][] moveBuffers = new int[0][];
+  private int[][] moveOrderValues = new int[0][];
+
+  /**
+   * Moves and their move ordering values of the Young Brothers Wait split
+   * nodes running on the thread of this worker solver, reused like the
+   * buffers per ply. They are a stack rather than selected by ply: a thread
+   * waiting to join a brother runs other split nodes of any depth meanwhile,
+   * which must not overwrite the moves of the waiting nodes.
+   */
+  private int[][] splitNodeMoveBuffers = new int[0][];
+  private int[][] splitNodeMoveOrderValues = new int[0][];
+  private int splitNodes;
+
+  /**
+   * Weights of the real/safe moves delta, the history score and the killer
+   * bonus in the move ordering value. Moves with lower values are tried
+   * first.
+   */
+  protected int deltaWeight = DEFAULT_DELTA_WEIGHT;
+  protected int historyWeight = DEFAULT_HISTORY_WEIGHT;
+  protected int killerWeight = DEFAULT_KILLER_WEIGHT;
+
+  /**
+   * History table: for every encoded move the sum of the squared remaining
+   * depths of the cutoffs it caused.
+   */
+  private long[] history = new long[0];
+
+  /**
+   * The two moves that caused the latest cutoffs per ply, most recent first,
+   * -1 for none.
+   */
+  private int[][] killers = new int[0][];
+
   /**
    * Defines a win for the current player to move.
    */
@@ -38,166 +200,720 @@ public class AbSolver
    */
   public static final int NEG_INF = -1000000;
 
+  public static final int DEFAULT_SPLIT_DEPTH = 5;
+
+  public static final int DEFAULT_REGION_TILES = 24;
+
+  public static final boolean DEFAULT_ENHANCED_TRANSPOSITION_CUTOFFS = false;
+
+  public static final int DEFAULT_DELTA_WEIGHT = 16;
+  public static final int DEFAULT_HISTORY_WEIGHT = 1;
+  public static final int DEFAULT_KILLER_WEIGHT = 4;
+
+  /**
+   * The metrics are published every time the node counter is a multiple of
+   * this mask plus one.
+   */
+  private static final long PUBLISH_MASK = 0xFFF;
+
+  /**
+   * Ways of searching with more than one thread.
+   */
+  public enum ParallelMode
+  {
+    /**
+     * Root moves of both starting players are distributed over the threads.
+     */
+    ROOT_SPLIT,
+    /**
+     * All threads search the whole tree, sharing one transposition table.
+     */
+    LAZY_SMP,
+    /**
+     * Close to the root, the younger brothers of a node are searched in
+     * parallel once the eldest one did not lead to a cutoff.
+     */
+    YOUNG_BROTHERS_WAIT
+  }
+
+  public AbSolver()
+  {
+    this(ZobristTranspositionTable.DEFAULT_SIZE_MB);
+  }
+
+  /**
+   * Creates a solver whose transposition tables use at most the given amount
+   * of memory in total. Uses one thread per available processor.
+   *
+   * @param transpositionTableSizeMb
+   */
+  public AbSolver(int transpositionTableSizeMb)
+  {
+    this(transpositionTableSizeMb,
+            Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a solver whose transposition tables use at most the given amount
+   * of memory in total.
+   *
+   * @param transpositionTableSizeMb
+   * @param threadCount Number of threads per search. With a single thread both
+   * searches run one after another on the calling thread.
+   */
+  public AbSolver(int transpositionTableSizeMb, int threadCount)
+  {
+    this.transpositionTableSizeMb = transpositionTableSizeMb;
+    this.threadCount = threadCount;
+  }
+
+  public void setParallelMode(ParallelMode parallelMode)
+  {
+    this.parallelMode = parallelMode;
+  }
+
+  public void setSplitDepth(int splitDepth)
+  {
+    this.splitDepth = splitDepth;
+  }
+
+  public void setThreadCount(int threadCount)
+  {
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * Keeps the transposition table in a file, so positions proven in one run
+   * speed up searches of boards of the same size in later runs.
+   *
+   * @param transpositionTableFile The file, null for an in-memory table.
+   */
+  public void setTranspositionTableFile(File transpositionTableFile)
+  {
+    this.transpositionTableFile = transpositionTableFile;
+    zorbistTranspositionTable = null;
+    zobristKeys = null;
+  }
+
+  public void setPrintResults(boolean printResults)
+  {
+    this.printResults = printResults;
+  }
+
+  /**
+   * Sets how the move ordering blends the real/safe moves delta (lower is
+   * better), the history score (the binary logarithm of the history value)
+   * and the killer bonus (2 for the latest killer of a ply, 1 for the one
+   * before).
+   *
+   * @param deltaWeight
+   * @param historyWeight
+   * @param killerWeight
+   */
+  public void setMoveOrderingWeights(int deltaWeight, int historyWeight,
+          int killerWeight)
+  {
+    this.deltaWeight = deltaWeight;
+    this.historyWeight = historyWeight;
+    this.killerWeight = killerWeight;
+  }
+
+  /**
+   * Sets whether sequential searches use the binary search, which only keeps
+   * the outcomes of positions. Parallel searches always use alpha-beta.
+   *
+   * @param binarySearch
+   */
+  public void setBinarySearch(boolean binarySearch)
+  {
+    this.binarySearch = binarySearch;
+  }
+
+  public void setEnhancedTranspositionCutoffs(
+          boolean enhancedTranspositionCutoffs)
+  {
+    this.enhancedTranspositionCutoffs = enhancedTranspositionCutoffs;
+  }
+
+  public void setRegionTiles(int regionTiles)
+  {
+    this.regionTiles = regionTiles;
+  }
+
+  /**
+   * Searches the same board repeatedly with 1, 2, 4, ... threads up to the
+   * thread count of this solver and prints the nodes searched and the speedup
+   * of every run compared to the single threaded one.
+   *
+   * @param currentGameState The board for which the winner shall be determined.
+   */
+  public void searchScaling(GameState currentGameState)
+  {
+    int maxThreadCount = threadCount;
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("%8s %14s %12s %8s%n", "Threads", "Nodes",
+            "Seconds", "Speedup"));
+    long singleThreadDuration = 0;
+    try
+    {
+      for (int threads = 1; threads <= maxThreadCount; threads *= 2)
+      {
+        threadCount = threads;
+        //Every run starts with an empty transposition table
+        zorbistTranspositionTable = null;
+        zobristKeys = null;
+        search(currentGameState);
+        if (threads == 1)
+        {
+          singleThreadDuration = Math.max(1, lastCalcDuration);
+        }
+        report.append(String.format("%8d %14d %12.3f %8.2f%n", threads,
+                nodeCounter, lastCalcDuration / 1000.0,
+                (double) singleThreadDuration / Math.max(1, lastCalcDuration)));
+        if (threads < maxThreadCount && threads * 2 > maxThreadCount)
+        {
+          //Always finish with the full thread count
+          threads = maxThreadCount / 2;
+        }
+      }
+    }
+    finally
+    {
+      threadCount = maxThreadCount;
+    }
+    System.out.print(report);
+  }
+
   /**
    * Initializes and starts the search (once with vertical starting, once with
    * horizontal starting) and prints out the results (Winner, duration, nodes
    * explored).
    *
    * @param currentGameState The board for which the winner shall be determined.
+   * @return The outcome and statistics of the search.
    */
-  public void search(GameState currentGameState)
+  public SearchResult search(GameState currentGameState)
   {
-    zorbistTranspositionTable = new ZobristTranspositionTable(
-            currentGameState.getWidth(),
-            currentGameState.getHeight());
+    //The player to move is part of the hashes, so one table serves both
+    //starting players and all later searches on boards of the same size
+    boolean binary = binarySearch && threadCount <= 1;
+    if (zobristKeys == null
+            || zobristKeys.getWidth() != currentGameState.getWidth()
+            || zobristKeys.getHeight() != currentGameState.getHeight()
+            || (outcomeTable != null) != binary)
+    {
+      if (binary)
+      {
+        //The outcomes have a table of their own, which only needs keys
+        zobristKeys = new ZobristKeys(currentGameState.getWidth(),
+                currentGameState.getHeight());
+        outcomeTable = new OutcomeTable(transpositionTableSizeMb);
+        zorbistTranspositionTable = null;
+      }
+      else
+      {
+        zorbistTranspositionTable = createTranspositionTable(
+                currentGameState.getWidth(), currentGameState.getHeight());
+        zobristKeys = zorbistTranspositionTable.getKeys();
+        outcomeTable = null;
+      }
+    }
+    if (binary)
+    {
+      outcomeTable.resetStatistics();
+    }
+    else
+    {
+      zorbistTranspositionTable.resetStatistics();
+    }
 
     long currentTime = System.currentTimeMillis();
 
     nodeCounter = 0;
+    metrics = new SearchMetrics();
+    metrics.start();
+    publishedMetrics = metrics;
+    clearMoveHistory();
 
     //Create two separate deep copies of the board to be searched.
-    GameState gameStateVerticalStarts = new GameState(
-            currentGameState.getWidth(),
-            currentGameState.getHeight());
-    GameState gameStateHorizontalStarts = new GameState(
-            currentGameState.getWidth(),
-            currentGameState.getHeight());
-    gameStateHorizontalStarts.toggleVerticalsTurn();
-    boolean[][] vboard = gameStateVerticalStarts.getBoard();
-    boolean[][] hboard = gameStateHorizontalStarts.getBoard();
-    boolean[][] board = currentGameState.getBoard();
-    for (int i = 0; i < currentGameState.getWidth(); i++)
-    {
-      for (int j = 0; j < currentGameState.getHeight(); j++)
-      {
-        vboard[i][j] = hboard[i][j] = board[i][j];
-      }
-    }
-
-    zorbistTranspositionTable.clear();
-    int scoreVerticalStarts = alphaBetaSearch(gameStateVerticalStarts,
-            NEG_INF, POS_INF);
-    zorbistTranspositionTable.clear();
-    int scoreHorizontalStarts = alphaBetaSearch(gameStateHorizontalStarts,
-            NEG_INF, POS_INF);
-    //Interpret and print out the results
-    String result;
-    if (scoreVerticalStarts == scoreHorizontalStarts)
+    GameState gameStateVerticalStarts = new GameState(currentGameState);
+    GameState gameStateHorizontalStarts = new GameState(currentGameState);
+    if (!gameStateVerticalStarts.getVerticalsTurn())
+    {
+      gameStateVerticalStarts.toggleVerticalsTurn();
+    }
+    if (gameStateHorizontalStarts.getVerticalsTurn())
+    {
+      gameStateHorizontalStarts.toggleVerticalsTurn();
+    }
+    gameStateVerticalStarts.setZobristKeys(zobristKeys);
+    gameStateHorizontalStarts.setZobristKeys(zobristKeys);
+
+    int scoreVerticalStarts;
+    int scoreHorizontalStarts;
+    if (binary)
     {
-      if (scoreVerticalStarts == POS_INF)
+      scoreVerticalStarts = isWin(gameStateVerticalStarts, 0) ? POS_INF
+              : NEG_INF;
+      scoreHorizontalStarts = isWin(gameStateHorizontalStarts, 0) ? POS_INF
+              : NEG_INF;
+    }
+    else if (threadCount <= 1)
+    {
+      scoreVerticalStarts = alphaBetaSearch(gameStateVerticalStarts,
+              NEG_INF, POS_INF, 0);
+      scoreHorizontalStarts = alphaBetaSearch(gameStateHorizontalStarts,
+              NEG_INF, POS_INF, 0);
+    }
+    else if (parallelMode == ParallelMode.LAZY_SMP)
+    {
+      Queue<AbSolver> workers = new ConcurrentLinkedQueue<>();
+      ForkJoinPool pool = new ForkJoinPool(threadCount);
+      try
       {
-        result = "First player win.";
+        scoreVerticalStarts = pool.invoke(
+                new LazySmpSearch(gameStateVerticalStarts, workers));
+        scoreHorizontalStarts = pool.invoke(
+                new LazySmpSearch(gameStateHorizontalStarts, workers));
       }
-      else
+      finally
+      {
+        pool.shutdown();
+      }
+
+      for (AbSolver worker : workers)
       {
-        result = "Second player win.";
+        addWorkerStatistics(worker);
       }
     }
-    else if (scoreVerticalStarts == POS_INF)
+    else if (parallelMode == ParallelMode.YOUNG_BROTHERS_WAIT)
     {
-      result = "Vertical player win.";
+      YbwSearch ybwSearch = new YbwSearch();
+      ForkJoinPool pool = new ForkJoinPool(threadCount);
+      try
+      {
+        scoreVerticalStarts = pool.invoke(new YbwNode(ybwSearch,
+                gameStateVerticalStarts, new StopSignal(), null, 0));
+        scoreHorizontalStarts = pool.invoke(new YbwNode(ybwSearch,
+                gameStateHorizontalStarts, new StopSignal(), null, 0));
+      }
+      finally
+      {
+        pool.shutdown();
+      }
+
+      for (AbSolver worker : ybwSearch.workers)
+      {
+        addWorkerStatistics(worker);
+      }
     }
     else
     {
-      result = "Horizontal player win.";
+      Queue<AbSolver> workers = new ConcurrentLinkedQueue<>();
+      ForkJoinPool pool = new ForkJoinPool(threadCount);
+      try
+      {
+        ForkJoinTask<Integer> verticalStarts = pool.submit(
+                new RootSearch(gameStateVerticalStarts,
+                        zorbistTranspositionTable, workers));
+        ForkJoinTask<Integer> horizontalStarts = pool.submit(
+                new RootSearch(gameStateHorizontalStarts,
+                        zorbistTranspositionTable, workers));
+        scoreVerticalStarts = verticalStarts.join();
+        scoreHorizontalStarts = horizontalStarts.join();
+      }
+      finally
+      {
+        pool.shutdown();
+      }
+
+      //Both root nodes plus everything below them
+      nodeCounter = 2;
+      metrics.countNode(0);
+      metrics.countNode(0);
+      for (AbSolver worker : workers)
+      {
+        addWorkerStatistics(worker);
+      }
+    }
+
+    publishTableStatistics();
+    metrics.finish(nodeCounter);
+    if (!binary)
+    {
+      zorbistTranspositionTable.flush();
     }
 
     //Measure duration
     lastCalcDuration = System.currentTimeMillis() - currentTime;
+
+    SearchResult searchResult = new SearchResult(currentGameState.getWidth(),
+            currentGameState.getHeight(), scoreVerticalStarts == POS_INF,
+            scoreHorizontalStarts == POS_INF, lastCalcDuration, metrics);
+    if (!printResults)
+    {
+      return searchResult;
+    }
+
+    //Interpret and print out the results
     double secDuration = ((double) lastCalcDuration) / 1000;
 
-    System.out.println("Result: " + result);
+    System.out.println("Result: " + searchResult.getOutcome());
 
     System.out.println("Search Duration: " + secDuration
             + " seconds. Nodes searched: " + nodeCounter);
+    System.out.print(metrics);
+    if (regionTiles > 0)
+    {
+      System.out.println("Region values cached: "
+              + regionSolver.getCachedValues() + ", hits: "
+              + regionSolver.getHits() + " of " + regionSolver.getLookups()
+              + " lookups");
+    }
+    return searchResult;
   }
 
   /**
-   * Recursive method to search through the Triomineering game tree.
+   * Creates a single threaded solver searching part of a parallel search with
+   * the settings of this solver.
    *
-   * @param gameState
-   * @param alpha
-   * @param beta
+   * @param transpositionTable The table to use.
    * @return
    */
-  private int alphaBetaSearch(GameState gameState, int alpha, int beta)
+  private AbSolver createWorkerSolver(
+          ZobristTranspositionTable transpositionTable)
   {
-    nodeCounter++;
+    AbSolver solver = new AbSolver(transpositionTableSizeMb, 1);
+    solver.zorbistTranspositionTable = transpositionTable;
+    solver.regionTiles = regionTiles;
+    solver.regionSolver = regionSolver;
+    solver.enhancedTranspositionCutoffs = enhancedTranspositionCutoffs;
+    solver.deltaWeight = deltaWeight;
+    solver.historyWeight = historyWeight;
+    solver.killerWeight = killerWeight;
+    solver.worker = true;
+    solver.metrics.start();
+    metrics.addWorker(solver.metrics);
+    return solver;
+  }
 
-    List<Piece> availableMoves = gameState.getAvailableMoves();
-    if (availableMoves.isEmpty())
+  private ZobristTranspositionTable createTranspositionTable(int width,
+          int height)
+  {
+    if (transpositionTableFile == null)
     {
-      //No moves possible? Player to move loses
-      return NEG_INF;
+      return new ZobristTranspositionTable(width, height,
+              transpositionTableSizeMb);
     }
-
-    //Check hash of this board state with the transposition table;
-    //If result already known, return it.
-    long hash = zorbistTranspositionTable.hash(gameState.getBoard(), false, false);
-    Integer hashedValue = zorbistTranspositionTable.getHashedValue(hash);
-    if (hashedValue != null)
+    try
     {
-      return hashedValue;
+      return ZobristTranspositionTable.openFile(transpositionTableFile, width,
+              height, transpositionTableSizeMb);
     }
+    catch (IOException ex)
+    {
+      throw new UncheckedIOException(ex);
+    }
+  }
 
-    int realOwn = gameState.getRealMovesNumber(gameState.getVerticalsTurn());
-    int realOpp = gameState.getRealMovesNumber(!gameState.getVerticalsTurn());
-    int safeOwn = gameState.getSafeMovesNumber(gameState.getVerticalsTurn());
-    int safeOpp = gameState.getSafeMovesNumber(!gameState.getVerticalsTurn());
-
-    //Abort criteria
-    if (safeOwn > realOpp)
+  /**
+   * Describes the outcome class of a board given the results of the searches
+   * for both starting players.
+   *
+   * @param verticalStartsWins Whether vertical wins when moving first.
+   * @param horizontalStartsWins Whether horizontal wins when moving first.
+   * @return
+   */
+  static String describeResult(boolean verticalStartsWins,
+          boolean horizontalStartsWins)
+  {
+    if (verticalStartsWins == horizontalStartsWins)
     {
-      return POS_INF;
+      if (verticalStartsWins)
+      {
+        return "First player win.";
+      }
+      else
+      {
+        return "Second player win.";
+      }
     }
-    else if (realOwn < safeOpp)
+    else if (verticalStartsWins)
     {
-      return NEG_INF;
+      return "Vertical player win.";
     }
-
-    //Set move order evaluation values (delta between real/safe moves before and
-    //after the move)
-    for (Piece move : availableMoves)
+    else
     {
-      gameState.doMove(move);
-
-      int nextRealOwn = gameState.getRealMovesNumber(gameState.getVerticalsTurn());
-      int nextRealOpp = gameState.getRealMovesNumber(!gameState.getVerticalsTurn());
-      int nextSafeOwn = gameState.getSafeMovesNumber(gameState.getVerticalsTurn());
-      int nextSafeOpp = gameState.getSafeMovesNumber(!gameState.getVerticalsTurn());
-
-      int moveOrderValue = (realOwn - nextRealOwn) - (realOpp - nextRealOpp)
-              + (safeOwn - nextSafeOwn) - (safeOpp - nextSafeOpp);
+      return "Horizontal player win.";
+    }
+  }
 
-      move.setMoveOrderingValue(moveOrderValue);
+  /**
+   * Gets the metrics of the running search, or of the last one if none is
+   * running. May be called from any thread, e.g. to monitor the progress of a
+   * long search.
+   *
+   * @return A snapshot of the metrics, which does not change any more.
+   */
+  public SearchMetrics getMetrics()
+  {
+    return publishedMetrics.snapshot();
+  }
 
-      gameState.undoMove();
+  /**
+   * Copies the statistics of the table in use to the metrics. The table
+   * counts for all threads of a parallel search.
+   */
+  private void publishTableStatistics()
+  {
+    if (outcomeTable != null && !worker)
+    {
+      metrics.setTranspositionTableStatistics(outcomeTable.getProbes(),
+              outcomeTable.getHits(), outcomeTable.getStores(),
+              outcomeTable.getOverwrites());
     }
-
-    //Put the moves in descending move ordering value order
-    Collections.sort(availableMoves, new Comparator<Piece>()
+    else if (!worker)
     {
-      @Override
-      public int compare(Piece o1, Piece o2)
-      {
-        return o1.getMoveOrderingValue() - o2.getMoveOrderingValue();
-      }
-    });
+      metrics.setTranspositionTableStatistics(
+              zorbistTranspositionTable.getProbes(),
+              zorbistTranspositionTable.getHits(),
+              zorbistTranspositionTable.getStores(),
+              zorbistTranspositionTable.getOverwrites());
+    }
+  }
 
-    //Traverse through moves in the order of descending move ordering values
-    //(Starting with the "best move")
-    int score = Integer.MIN_VALUE;
-    for (Piece move : availableMoves)
+  /**
+   * Counts a node at a ply and every few thousand nodes publishes the
+   * metrics.
+   *
+   * @param ply
+   * @return The value of the node counter before this node.
+   */
+  private long countNode(int ply)
+  {
+    metrics.countNode(ply);
+    long nodesBefore = nodeCounter++;
+    if ((nodesBefore & PUBLISH_MASK) == 0)
     {
-      gameState.doMove(move);
-      gameState.toggleVerticalsTurn();
-
-      int value = -alphaBetaSearch(gameState, -beta, -alpha);
+      publishTableStatistics();
+      metrics.publish(nodeCounter);
+    }
+    return nodesBefore;
+  }
 
-      zorbistTranspositionTable.hashAllVariations(gameState.getBoard(), -value);
+  private void addWorkerStatistics(AbSolver worker)
+  {
+    nodeCounter += worker.nodeCounter;
+  }
 
-      gameState.undoMove();
-      gameState.toggleVerticalsTurn();
+  /**
+   * Checks if the parallel search this solver works for has been decided
+   * elsewhere. Values returned by an interrupted search are meaningless and
+   * must neither be used nor stored.
+   *
+   * @return
+   */
+  private boolean isStopped()
+  {
+    return stopFlag != null && stopFlag.isStopped();
+  }
+
+  /**
+   * Makes sure there are move buffers for a ply large enough for the moves of
+   * a board.
+   *
+   * @param ply
+   * @param gameState
+   */
+  void allocateMoveBuffers(int ply, GameState gameState)
+  {
+    if (ply >= moveBuffers.length)
+    {
+      int plies = Math.max(ply + 1, 2 * moveBuffers.length);
+      moveBuffers = Arrays.copyOf(moveBuffers, plies);
+      moveOrderValues = Arrays.copyOf(moveOrderValues, plies);
+      killers = Arrays.copyOf(killers, plies);
+      for (int i = 0; i < plies; i++)
+      {
+        if (killers[i] == null)
+        {
+          killers[i] = new int[]
+          {
+            -1, -1
+          };
+        }
+      }
+    }
+    int maxMovesNumber = gameState.getMaxMovesNumber();
+    if (moveBuffers[ply] == null || moveBuffers[ply].length < maxMovesNumber)
+    {
+      moveBuffers[ply] = new int[maxMovesNumber];
+      moveOrderValues[ply] = new int[maxMovesNumber];
+    }
+    if (history.length < 2 * maxMovesNumber)
+    {
+      history = new long[2 * maxMovesNumber];
+    }
+  }
+
+  /**
+   * Makes sure there are move buffers for another split node running on the
+   * thread of this solver, large enough for the moves of a board.
+   *
+   * @param gameState
+   * @return The index of the buffers, to be released by
+   * {@link #releaseSplitNodeBuffers()}.
+   */
+  private int acquireSplitNodeBuffers(GameState gameState)
+  {
+    int index = splitNodes++;
+    if (index == splitNodeMoveBuffers.length)
+    {
+      int frames = Math.max(index + 1, 2 * splitNodeMoveBuffers.length);
+      splitNodeMoveBuffers = Arrays.copyOf(splitNodeMoveBuffers, frames);
+      splitNodeMoveOrderValues = Arrays.copyOf(splitNodeMoveOrderValues,
+              frames);
+    }
+    int maxMovesNumber = gameState.getMaxMovesNumber();
+    if (splitNodeMoveBuffers[index] == null
+            || splitNodeMoveBuffers[index].length < maxMovesNumber)
+    {
+      splitNodeMoveBuffers[index] = new int[maxMovesNumber];
+      splitNodeMoveOrderValues[index] = new int[maxMovesNumber];
+    }
+    return index;
+  }
+
+  private void releaseSplitNodeBuffers()
+  {
+    splitNodes--;
+  }
+
+  /**
+   * Forgets the history and killer moves of earlier searches.
+   */
+  private void clearMoveHistory()
+  {
+    Arrays.fill(history, 0);
+    for (int[] plyKillers : killers)
+    {
+      Arrays.fill(plyKillers, -1);
+    }
+  }
+
+  /**
+   * Remembers a move that caused a cutoff in the history table and as killer
+   * move of its ply.
+   *
+   * @param gameState
+   * @param move
+   * @param moveIndex Position of the move in the move ordering.
+   * @param ply
+   */
+  private void recordCutoff(GameState gameState, int move, int moveIndex,
+          int ply)
+  {
+    metrics.countCutoff(moveIndex);
+    //Every move fills three tiles, which bounds the remaining depth
+    int depth = gameState.getFreeTilesNumber() / 3;
+    history[move] += depth * depth;
+    int[] plyKillers = killers[ply];
+    if (plyKillers[0] != move)
+    {
+      plyKillers[1] = plyKillers[0];
+      plyKillers[0] = move;
+    }
+  }
+
+  /**
+   * Recursive method to search through the Triomineering game tree.
+   *
+   * @param gameState
+   * @param alpha
+   * @param beta
+   * @param ply Number of moves made since the root, selects the move buffers
+   * to use.
+   * @return
+   */
+  private int alphaBetaSearch(GameState gameState, int alpha, int beta,
+          int ply)
+  {
+    long nodesBefore = countNode(ply);
+
+    if (isStopped())
+    {
+      return 0;
+    }
+
+    //Check hash of this board state with the transposition table before
+    //generating any moves; If result already known, return it.
+    int hashedValue = zorbistTranspositionTable.getHashedValue(
+            gameState);
+    if (hashedValue != ZobristTranspositionTable.NO_VALUE)
+    {
+      return hashedValue;
+    }
+
+    int realOwn = gameState.getRealMovesNumber(gameState.getVerticalsTurn());
+    int realOpp = gameState.getRealMovesNumber(!gameState.getVerticalsTurn());
+    int safeOwn = gameState.getSafeMovesNumber(gameState.getVerticalsTurn());
+    int safeOpp = gameState.getSafeMovesNumber(!gameState.getVerticalsTurn());
+
+    if (realOwn == 0)
+    {
+      //No moves possible? Player to move loses
+      metrics.countTerminalPosition();
+      return store(gameState, NEG_INF, nodesBefore);
+    }
+
+    //Abort criteria
+    if (safeOwn > realOpp)
+    {
+      metrics.countAbortWin();
+      return store(gameState, POS_INF, nodesBefore);
+    }
+    else if (realOwn < safeOpp)
+    {
+      metrics.countAbortLoss();
+      return store(gameState, NEG_INF, nodesBefore);
+    }
+
+    //Solve independent regions separately and sum them up
+    if (gameState.getFreeTilesNumber() <= regionTiles
+            && gameState.hasSeveralRegions())
+    {
+      metrics.countRegionSolve();
+      return store(gameState,
+              regionSolver.isWin(RegionSolver.findRegions(
+                      gameState.getFreeRows()), gameState.getVerticalsTurn())
+              ? POS_INF : NEG_INF, nodesBefore);
+    }
+
+    allocateMoveBuffers(ply, gameState);
+    int[] availableMoves = moveBuffers[ply];
+    int[] moveOrderValues = this.moveOrderValues[ply];
+    int movesNumber = gameState.getAvailableMoves(availableMoves);
+
+    if (enhancedTranspositionCutoffs)
+    {
+      if (hasTranspositionCutoff(gameState, availableMoves, movesNumber))
+      {
+        return store(gameState, POS_INF, nodesBefore);
+      }
+    }
+
+    orderMoves(gameState, availableMoves, moveOrderValues, movesNumber, ply);
+
+    //Traverse through moves in the order of descending move ordering values
+    //(Starting with the "best move")
+    int score = Integer.MIN_VALUE;
+    for (int i = 0; i < movesNumber; i++)
+    {
+      int value = searchMove(gameState, availableMoves[i], alpha, beta, ply);
+      if (isStopped())
+      {
+        return 0;
+      }
 
       if (value > score)
       {
@@ -210,10 +926,642 @@ public class AbSolver
       if (alpha >= beta)
       {
         //Pruning
+        recordCutoff(gameState, availableMoves[i], i, ply);
         break;
       }
     }
 
-    return score;
+    return store(gameState, score, nodesBefore);
+  }
+
+  /**
+   * Decides whether the player to move wins, the binary counterpart of
+   * {@link #alphaBetaSearch(GameState, int, int, int)}. Every position is
+   * either won or lost, so there are no scores or windows: a position is won
+   * as soon as one move leads to a lost position, and only its outcome is
+   * stored.
+   *
+   * @param gameState
+   * @param ply Number of moves made since the root, selects the move buffers
+   * to use.
+   * @return
+   */
+  private boolean isWin(GameState gameState, int ply)
+  {
+    countNode(ply);
+
+    long hash = gameState.getCanonicalHash();
+    int outcome = outcomeTable.getOutcome(hash);
+    if (outcome != OutcomeTable.UNKNOWN)
+    {
+      return outcome == OutcomeTable.WIN;
+    }
+
+    int realOwn = gameState.getRealMovesNumber(gameState.getVerticalsTurn());
+    int realOpp = gameState.getRealMovesNumber(!gameState.getVerticalsTurn());
+    int safeOwn = gameState.getSafeMovesNumber(gameState.getVerticalsTurn());
+    int safeOpp = gameState.getSafeMovesNumber(!gameState.getVerticalsTurn());
+
+    //No moves possible? Player to move loses. Otherwise the abort criteria
+    //may decide the position.
+    boolean win;
+    if (realOwn == 0)
+    {
+      metrics.countTerminalPosition();
+      win = false;
+    }
+    else if (realOwn < safeOpp)
+    {
+      metrics.countAbortLoss();
+      win = false;
+    }
+    else if (safeOwn > realOpp)
+    {
+      metrics.countAbortWin();
+      win = true;
+    }
+    else
+    {
+      win = isWinByMoves(gameState, ply);
+    }
+    outcomeTable.setOutcome(hash, win);
+    return win;
+  }
+
+  /**
+   * Decides whether the player to move wins a position not decided by the
+   * abort criteria, by solving its regions or trying its moves.
+   *
+   * @param gameState
+   * @param ply
+   * @return
+   */
+  private boolean isWinByMoves(GameState gameState, int ply)
+  {
+    //Solve independent regions separately and sum them up
+    if (gameState.getFreeTilesNumber() <= regionTiles
+            && gameState.hasSeveralRegions())
+    {
+      metrics.countRegionSolve();
+      return regionSolver.isWin(RegionSolver.findRegions(
+              gameState.getFreeRows()), gameState.getVerticalsTurn());
+    }
+
+    allocateMoveBuffers(ply, gameState);
+    int[] availableMoves = moveBuffers[ply];
+    int movesNumber = gameState.getAvailableMoves(availableMoves);
+    orderMoves(gameState, availableMoves, moveOrderValues[ply], movesNumber,
+            ply);
+
+    for (int i = 0; i < movesNumber; i++)
+    {
+      gameState.doMove(availableMoves[i]);
+      gameState.toggleVerticalsTurn();
+      boolean opponentWins = isWin(gameState, ply + 1);
+      gameState.undoMove();
+      gameState.toggleVerticalsTurn();
+      if (!opponentWins)
+      {
+        recordCutoff(gameState, availableMoves[i], i, ply);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Looks up the positions after all moves in the transposition table
+   * (enhanced transposition cutoffs).
+   *
+   * @param gameState
+   * @param availableMoves
+   * @param movesNumber
+   * @return Whether a move leads to a position known to be lost for the
+   * opponent.
+   */
+  private boolean hasTranspositionCutoff(GameState gameState,
+          int[] availableMoves, int movesNumber)
+  {
+    metrics.countEtcPosition();
+    for (int i = 0; i < movesNumber; i++)
+    {
+      metrics.countEtcProbe();
+      if (zorbistTranspositionTable.getHashedValue(
+              gameState.getCanonicalHashAfter(availableMoves[i])) == NEG_INF)
+      {
+        metrics.countEtcCutoff();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Makes a move, searches the resulting position and takes the move back.
+   *
+   * @param gameState
+   * @param move
+   * @param alpha
+   * @param beta
+   * @param ply
+   * @return The value of the move for the player making it.
+   */
+  private int searchMove(GameState gameState, int move, int alpha, int beta,
+          int ply)
+  {
+    gameState.doMove(move);
+    gameState.toggleVerticalsTurn();
+    int value = -alphaBetaSearch(gameState, -beta, -alpha, ply + 1);
+    gameState.undoMove();
+    gameState.toggleVerticalsTurn();
+    return value;
+  }
+
+  /**
+   * Puts the value of a searched position in the transposition table.
+   *
+   * @param gameState
+   * @param value
+   * @param nodesBefore Value of the node counter before the position was
+   * searched.
+   * @return The value.
+   */
+  private int store(GameState gameState, int value, long nodesBefore)
+  {
+    zorbistTranspositionTable.hashCanonical(gameState, value,
+            nodeCounter - nodesBefore);
+    return value;
+  }
+
+  /**
+   * Sets the move ordering values of all moves (delta between real/safe moves
+   * before and after the move, blended with the history score and killer
+   * bonus) and sorts the moves accordingly. Package-private, like
+   * {@link #allocateMoveBuffers(int, GameState)}, for the benchmarks.
+   *
+   * @param gameState
+   * @param availableMoves
+   * @param moveOrderValues Receives the move ordering values, sorted along
+   * with the moves.
+   * @param movesNumber
+   * @param ply Ply of the position, -1 to ignore the history and killer
+   * moves (of positions split among several solvers).
+   */
+  void orderMoves(GameState gameState, int[] availableMoves,
+          int[] moveOrderValues, int movesNumber, int ply)
+  {
+    int firstKiller = ply >= 0 ? killers[ply][0] : -1;
+    int secondKiller = ply >= 0 ? killers[ply][1] : -1;
+    for (int i = 0; i < movesNumber; i++)
+    {
+      int move = availableMoves[i];
+      int moveOrderValue = deltaWeight * gameState.getMoveOrderDelta(move);
+      if (ply >= 0 && historyWeight != 0)
+      {
+        moveOrderValue -= historyWeight
+                * (64 - Long.numberOfLeadingZeros(history[move]));
+      }
+      if (move == firstKiller)
+      {
+        moveOrderValue -= 2 * killerWeight;
+      }
+      else if (move == secondKiller)
+      {
+        moveOrderValue -= killerWeight;
+      }
+
+      if (orderingNoise != 0)
+      {
+        //Break ties between equally valued moves at random (xorshift)
+        orderingNoise ^= orderingNoise << 13;
+        orderingNoise ^= orderingNoise >>> 7;
+        orderingNoise ^= orderingNoise << 17;
+        moveOrderValue = moveOrderValue * 4 + (int) (orderingNoise & 3);
+      }
+
+      moveOrderValues[i] = moveOrderValue;
+    }
+
+    //Put the moves in descending move ordering value order. Insertion sort is
+    //stable, allocates nothing and is fast for the few moves of a node.
+    for (int i = 1; i < movesNumber; i++)
+    {
+      int move = availableMoves[i];
+      int moveOrderValue = moveOrderValues[i];
+      int j = i - 1;
+      while (j >= 0 && moveOrderValues[j] > moveOrderValue)
+      {
+        availableMoves[j + 1] = availableMoves[j];
+        moveOrderValues[j + 1] = moveOrderValues[j];
+        j--;
+      }
+      availableMoves[j + 1] = move;
+      moveOrderValues[j + 1] = moveOrderValue;
+    }
+  }
+
+  /**
+   * Searches one root position in parallel: every root move becomes a task of
+   * its own. Each worker thread searches its tasks with a solver of its own;
+   * all of them share one transposition table and stop as soon as any root
+   * move turns out to be winning.
+   */
+  private class RootSearch implements Callable<Integer>
+  {
+    private final GameState rootState;
+    /**
+     * Stopped once a winning root move has been found.
+     */
+    private final StopSignal won = new StopSignal();
+    private final ThreadLocal<AbSolver> workerSolver;
+
+    RootSearch(GameState rootState,
+            final ZobristTranspositionTable transpositionTable,
+            final Queue<AbSolver> workers)
+    {
+      this.rootState = rootState;
+      workerSolver = new ThreadLocal<AbSolver>()
+      {
+        @Override
+        protected AbSolver initialValue()
+        {
+          AbSolver solver = createWorkerSolver(transpositionTable);
+          solver.stopFlag = won;
+          workers.add(solver);
+          return solver;
+        }
+      };
+    }
+
+    @Override
+    public Integer call()
+    {
+      int[] availableMoves = new int[rootState.getMaxMovesNumber()];
+      int movesNumber = rootState.getAvailableMoves(availableMoves);
+      if (movesNumber == 0)
+      {
+        return NEG_INF;
+      }
+
+      int realOwn = rootState.getRealMovesNumber(rootState.getVerticalsTurn());
+      int realOpp = rootState.getRealMovesNumber(!rootState.getVerticalsTurn());
+      int safeOwn = rootState.getSafeMovesNumber(rootState.getVerticalsTurn());
+      int safeOpp = rootState.getSafeMovesNumber(!rootState.getVerticalsTurn());
+
+      //Abort criteria
+      if (safeOwn > realOpp)
+      {
+        return POS_INF;
+      }
+      else if (realOwn < safeOpp)
+      {
+        return NEG_INF;
+      }
+
+      orderMoves(rootState, availableMoves,
+              new int[availableMoves.length], movesNumber, -1);
+
+      List<RootMoveTask> tasks = new ArrayList<>();
+      for (int i = 0; i < movesNumber; i++)
+      {
+        tasks.add(new RootMoveTask(this, availableMoves[i]));
+      }
+      ForkJoinTask.invokeAll(tasks);
+
+      return won.isStopped() ? POS_INF : NEG_INF;
+    }
+  }
+
+  /**
+   * Searches the position after a single root move.
+   */
+  private static class RootMoveTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final RootSearch rootSearch;
+    private final int move;
+
+    RootMoveTask(RootSearch rootSearch, int move)
+    {
+      this.rootSearch = rootSearch;
+      this.move = move;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (rootSearch.won.isStopped())
+      {
+        return;
+      }
+      AbSolver solver = rootSearch.workerSolver.get();
+
+      GameState gameState = new GameState(rootSearch.rootState);
+      gameState.doMove(move);
+      gameState.toggleVerticalsTurn();
+
+      int value = -solver.alphaBetaSearch(gameState, NEG_INF, POS_INF, 1);
+
+      if (!solver.isStopped() && value == POS_INF)
+      {
+        rootSearch.won.stop();
+      }
+    }
+  }
+
+  /**
+   * Searches one root position with all threads at once (lazy SMP). Every
+   * thread runs a complete search with a solver of its own, all sharing the
+   * transposition table of this solver. Apart from the first one, the threads
+   * break move ordering ties at random, so they tend to work on different
+   * subtrees and store results the others can use.
+   */
+  private class LazySmpSearch extends RecursiveTask<Integer>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final GameState rootState;
+    private final Queue<AbSolver> workers;
+
+    LazySmpSearch(GameState rootState, Queue<AbSolver> workers)
+    {
+      this.rootState = rootState;
+      this.workers = workers;
+    }
+
+    @Override
+    protected Integer compute()
+    {
+      StopSignal finished = new StopSignal();
+      AtomicInteger result = new AtomicInteger(
+              ZobristTranspositionTable.NO_VALUE);
+      List<LazySmpThread> threads = new ArrayList<>();
+      for (int i = 0; i < threadCount; i++)
+      {
+        AbSolver solver = createWorkerSolver(zorbistTranspositionTable);
+        solver.stopFlag = finished;
+        //Any odd constant gives a different, never zero, xorshift sequence
+        solver.orderingNoise = i * 0x9E3779B97F4A7C15L;
+        workers.add(solver);
+        threads.add(new LazySmpThread(solver, new GameState(rootState),
+                result));
+      }
+      ForkJoinTask.invokeAll(threads);
+      return result.get();
+    }
+  }
+
+  /**
+   * A single thread of a lazy SMP search.
+   */
+  private static class LazySmpThread extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final AbSolver solver;
+    private final GameState gameState;
+    private final AtomicInteger result;
+
+    LazySmpThread(AbSolver solver, GameState gameState, AtomicInteger result)
+    {
+      this.solver = solver;
+      this.gameState = gameState;
+      this.result = result;
+    }
+
+    @Override
+    protected void compute()
+    {
+      int value = solver.alphaBetaSearch(gameState, NEG_INF, POS_INF, 0);
+      if (!solver.isStopped())
+      {
+        result.compareAndSet(ZobristTranspositionTable.NO_VALUE, value);
+        solver.stopFlag.stop();
+      }
+    }
+  }
+
+  /**
+   * Shared state of a Young Brothers Wait search: the sequential solvers of
+   * the worker threads, all using the transposition table of this solver.
+   */
+  private class YbwSearch
+  {
+    private final Queue<AbSolver> workers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<AbSolver> workerSolver
+            = new ThreadLocal<AbSolver>()
+            {
+              @Override
+              protected AbSolver initialValue()
+              {
+                AbSolver solver = createWorkerSolver(
+                        zorbistTranspositionTable);
+                workers.add(solver);
+                return solver;
+              }
+            };
+  }
+
+  /**
+   * A node of a Young Brothers Wait search. Its eldest (best ordered) child
+   * is searched first by the same thread. Unless that refutes the node, the
+   * younger brothers are forked as tasks of their own, and the first of them
+   * refuting the node stops the others. Below the split depth a node is
+   * searched sequentially.
+   */
+  private class YbwNode extends RecursiveTask<Integer>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final YbwSearch ybwSearch;
+    private final GameState gameState;
+    private final int depth;
+
+    /**
+     * Stopped when the result of this node is no longer needed.
+     */
+    private final StopSignal signal;
+
+    /**
+     * Signal shared with the brothers searched in parallel, stopped by the
+     * first brother refuting the parent. Null for eldest brothers.
+     */
+    private final StopSignal brothers;
+
+    /**
+     * Whether the search completed without being stopped, so its result may
+     * be used.
+     */
+    private boolean valid;
+
+    YbwNode(YbwSearch ybwSearch, GameState gameState, StopSignal signal,
+            StopSignal brothers, int depth)
+    {
+      this.ybwSearch = ybwSearch;
+      this.gameState = gameState;
+      this.signal = signal;
+      this.brothers = brothers;
+      this.depth = depth;
+    }
+
+    @Override
+    protected Integer compute()
+    {
+      int value = search();
+      valid = !signal.isStopped();
+      if (valid && value == NEG_INF && brothers != null)
+      {
+        //The parent wins with this move, no need to search the brothers
+        brothers.stop();
+      }
+      return value;
+    }
+
+    private int search()
+    {
+      AbSolver solver = ybwSearch.workerSolver.get();
+      if (depth >= splitDepth)
+      {
+        //The thread may run other nodes while waiting for a join, so keep the
+        //signal it had before
+        StopSignal previous = solver.stopFlag;
+        solver.stopFlag = signal;
+        int value = solver.alphaBetaSearch(gameState, NEG_INF, POS_INF,
+                depth);
+        solver.stopFlag = previous;
+        return value;
+      }
+
+      solver.countNode(depth);
+      if (signal.isStopped())
+      {
+        return 0;
+      }
+
+      //Probe the transposition table before generating any moves, as in
+      //alphaBetaSearch
+      int hashedValue = zorbistTranspositionTable.getHashedValue(
+              gameState);
+      if (hashedValue != ZobristTranspositionTable.NO_VALUE)
+      {
+        return hashedValue;
+      }
+
+      int realOwn = gameState.getRealMovesNumber(gameState.getVerticalsTurn());
+      int realOpp = gameState.getRealMovesNumber(!gameState.getVerticalsTurn());
+      int safeOwn = gameState.getSafeMovesNumber(gameState.getVerticalsTurn());
+      int safeOpp = gameState.getSafeMovesNumber(!gameState.getVerticalsTurn());
+
+      if (realOwn == 0)
+      {
+        //No moves possible? Player to move loses
+        solver.metrics.countTerminalPosition();
+        return store(NEG_INF);
+      }
+
+      //Abort criteria
+      if (safeOwn > realOpp)
+      {
+        solver.metrics.countAbortWin();
+        return store(POS_INF);
+      }
+      else if (realOwn < safeOpp)
+      {
+        solver.metrics.countAbortLoss();
+        return store(NEG_INF);
+      }
+
+      int buffers = solver.acquireSplitNodeBuffers(gameState);
+      try
+      {
+        return searchMoves(solver.splitNodeMoveBuffers[buffers],
+                solver.splitNodeMoveOrderValues[buffers], solver);
+      }
+      finally
+      {
+        solver.releaseSplitNodeBuffers();
+      }
+    }
+
+    /**
+     * Searches the eldest brother and then the younger brothers in parallel.
+     *
+     * @param availableMoves
+     * @param moveOrderValues
+     * @param solver The solver of the thread.
+     * @return
+     */
+    private int searchMoves(int[] availableMoves, int[] moveOrderValues,
+            AbSolver solver)
+    {
+      int movesNumber = gameState.getAvailableMoves(availableMoves);
+      solver.orderMoves(gameState, availableMoves, moveOrderValues,
+              movesNumber, -1);
+
+      //The eldest brother is searched first, by this thread
+      gameState.doMove(availableMoves[0]);
+      gameState.toggleVerticalsTurn();
+      YbwNode eldestNode = new YbwNode(ybwSearch, gameState, signal, null,
+              depth + 1);
+      int value = -eldestNode.invoke();
+      gameState.undoMove();
+      gameState.toggleVerticalsTurn();
+
+      if (signal.isStopped())
+      {
+        return 0;
+      }
+      if (value == POS_INF)
+      {
+        return store(POS_INF);
+      }
+
+      //Then the younger brothers wait no longer
+      StopSignal brothersSignal = new StopSignal(signal);
+      List<YbwNode> brotherNodes = new ArrayList<>();
+      for (int i = 1; i < movesNumber; i++)
+      {
+        GameState brotherState = new GameState(gameState);
+        brotherState.doMove(availableMoves[i]);
+        brotherState.toggleVerticalsTurn();
+        brotherNodes.add(new YbwNode(ybwSearch, brotherState,
+                new StopSignal(brothersSignal), brothersSignal, depth + 1));
+      }
+      for (int i = brotherNodes.size() - 1; i >= 0; i--)
+      {
+        brotherNodes.get(i).fork();
+      }
+
+      boolean won = false;
+      for (YbwNode brotherNode : brotherNodes)
+      {
+        int brotherValue = -brotherNode.join();
+        if (brotherNode.valid && brotherValue == POS_INF)
+        {
+          won = true;
+        }
+      }
+
+      if (signal.isStopped())
+      {
+        return 0;
+      }
+      return store(won ? POS_INF : NEG_INF);
+    }
+
+    /**
+     * Puts the value of this node in the transposition table.
+     *
+     * @param value
+     * @return The value.
+     */
+    private int store(int value)
+    {
+      //Split nodes are close to the root, so keep them in preference
+      zorbistTranspositionTable.hashCanonical(gameState, value,
+              Long.MAX_VALUE);
+      return value;
+    }
   }
 }
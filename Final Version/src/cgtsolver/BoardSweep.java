@@ -0,0 +1,208 @@
+package cgtsolver;
+
+import cgsuite.BoundedContext;
+import cgsuite.Context;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Solves all boards within ranges of widths and heights. The boards are
+ * searched smallest first by a fixed number of jobs running in parallel, each
+ * with a single threaded solver of its own. A board whose transposed board is
+ * in the ranges as well is only searched once (the narrower one): transposing
+ * a board just swaps the roles of the players.
+ * <p>
+ * Every result is written as a CSV row as soon as its board is solved, so the
+ * rows are not in any particular order.
+ * <p>
+ * The jobs share no transposition tables or region value caches, but the
+ * values of regions are computed with {@link cgsuite.CanonicalGame}, whose
+ * caches are shared by all threads of the process: the tables of all games
+ * and of number-up-stars, the comparison cache and the primary cache of the
+ * active {@link Context}, which memoizes sums and products. All but the last
+ * are thread-safe, so the sweep makes sure the active context is thread-safe
+ * too before it starts several jobs.
+ *
+ * @author daniel
+ */
+public class BoardSweep
+{
+  public static final String CSV_HEADER = "width,height,outcome,nodes,seconds,"
+          + "tt_probes,tt_hits,tt_overwrites,source";
+
+  private final int minWidth;
+  private final int maxWidth;
+  private final int minHeight;
+  private final int maxHeight;
+
+  /**
+   * Number of boards searched at the same time.
+   */
+  private int jobs = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Memory in megabytes of the transposition table of every job.
+   */
+  private int transpositionTableSizeMb
+          = ZobristTranspositionTable.DEFAULT_SIZE_MB;
+
+  private PrintStream csv;
+
+  public BoardSweep(int minWidth, int maxWidth, int minHeight, int maxHeight)
+  {
+    if (minWidth < 1 || minHeight < 1 || minWidth > maxWidth
+            || minHeight > maxHeight)
+    {
+      throw new IllegalArgumentException("Invalid board ranges: "
+              + minWidth + "-" + maxWidth + " x " + minHeight + "-"
+              + maxHeight);
+    }
+    this.minWidth = minWidth;
+    this.maxWidth = maxWidth;
+    this.minHeight = minHeight;
+    this.maxHeight = maxHeight;
+  }
+
+  public void setJobs(int jobs)
+  {
+    this.jobs = jobs;
+  }
+
+  public void setTranspositionTableSizeMb(int transpositionTableSizeMb)
+  {
+    this.transpositionTableSizeMb = transpositionTableSizeMb;
+  }
+
+  /**
+   * Solves all boards and writes their results to a CSV stream, starting with
+   * a header row.
+   *
+   * @param csv
+   * @throws InterruptedException
+   */
+  public void run(PrintStream csv) throws InterruptedException
+  {
+    this.csv = csv;
+    csv.println(CSV_HEADER);
+    csv.flush();
+    if (jobs > 1 && !isThreadSafe(Context.getActiveContext()))
+    {
+      //The jobs would put region sums into an unsynchronized map at once
+      Context.setActiveContext(new Context.DefaultContext());
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(jobs);
+    try
+    {
+      List<Future<?>> futures = new ArrayList<>();
+      for (final int[] board : getBoardsToSearch())
+      {
+        futures.add(pool.submit(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            solve(board[0], board[1]);
+          }
+        }));
+      }
+      for (Future<?> future : futures)
+      {
+        future.get();
+      }
+    }
+    catch (ExecutionException ex)
+    {
+      throw new IllegalStateException("Solving a board failed", ex.getCause());
+    }
+    finally
+    {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Decides whether several threads may use the primary cache of a context at
+   * once: the cache of the default context is concurrent, the bounded one is
+   * synchronized.
+   *
+   * @param context
+   * @return
+   */
+  private static boolean isThreadSafe(Context context)
+  {
+    return context instanceof BoundedContext
+            || context.getPrimaryCache() instanceof ConcurrentMap;
+  }
+
+  /**
+   * Lists the boards to search, smallest area first. Boards whose transposed
+   * board is searched instead are left out.
+   *
+   * @return Width and height of every board.
+   */
+  private List<int[]> getBoardsToSearch()
+  {
+    List<int[]> boards = new ArrayList<>();
+    for (int width = minWidth; width <= maxWidth; width++)
+    {
+      for (int height = minHeight; height <= maxHeight; height++)
+      {
+        if (width > height && isInRanges(height, width))
+        {
+          continue;
+        }
+        boards.add(new int[]
+        {
+          width, height
+        });
+      }
+    }
+    boards.sort(new Comparator<int[]>()
+    {
+      @Override
+      public int compare(int[] o1, int[] o2)
+      {
+        int areaDelta = o1[0] * o1[1] - o2[0] * o2[1];
+        return areaDelta != 0 ? areaDelta : o1[0] - o2[0];
+      }
+    });
+    return boards;
+  }
+
+  private boolean isInRanges(int width, int height)
+  {
+    return width >= minWidth && width <= maxWidth && height >= minHeight
+            && height <= maxHeight;
+  }
+
+  private void solve(int width, int height)
+  {
+    AbSolver solver = new AbSolver(transpositionTableSizeMb, 1);
+    solver.setPrintResults(false);
+    SearchResult result = solver.search(new GameState(width, height));
+    writeRow(result, "search");
+    if (width != height && isInRanges(height, width))
+    {
+      writeRow(result.transpose(), "transpose");
+    }
+  }
+
+  private synchronized void writeRow(SearchResult result, String source)
+  {
+    csv.println(result.getWidth() + "," + result.getHeight() + ","
+            + result.getOutcome() + "," + result.getNodes() + ","
+            + result.getDurationMillis() / 1000.0 + ","
+            + result.getTranspositionTableProbes() + ","
+            + result.getTranspositionTableHits() + ","
+            + result.getTranspositionTableOverwrites() + "," + source);
+    csv.flush();
+  }
+}
@@ -0,0 +1,441 @@
+package cgtsolver;
+
+import java.util.Arrays;
+
+/**
+ * Depth-first proof-number (df-pn) solver for the game Triomineering. Since
+ * every position is either a win or a loss for the player to move, the search
+ * only needs to prove one of both, which proof and disproof numbers guide it
+ * to with usually far fewer nodes than alpha-beta.
+ * <p>
+ * Uses the negamax formulation: the proof number of a position is the number
+ * of leaves to expand to prove a win for the player to move, the disproof
+ * number the number to prove a loss. Both are kept in a
+ * {@link ProofNumberTable} under the canonical hash of the position, shared
+ * with its flipped versions.
+ *
+ * @author daniel
+ */
+public class DfpnSolver
+{
+  /**
+   * Proof or disproof number of a proven position.
+   */
+  public static final int INFINITY = Integer.MAX_VALUE;
+
+  /**
+   * Outcomes of {@link #evaluate(GameState)} for the player to move.
+   */
+  private static final int UNKNOWN = 0;
+  private static final int WIN = 1;
+  private static final int LOSS = 2;
+
+  /**
+   * Counts the number of nodes explored during search.
+   */
+  protected long nodeCounter = 0;
+
+  /**
+   * Stores the duration of the last search with this solver instance.
+   */
+  protected long lastCalcDuration;
+
+  /**
+   * Provides the Zobrist keys of the searched board.
+   */
+  protected ZobristKeys zobristKeys;
+
+  /**
+   * Proof and disproof numbers of the positions searched.
+   */
+  protected ProofNumberTable proofNumberTable;
+
+  /**
+   * Memory in megabytes reserved for the proof number table.
+   */
+  protected int tableSizeMb;
+
+  /**
+   * Positions with at most this many free tiles are split into independent
+   * regions and decided as a sum of combinatorial games, like in
+   * {@link AbSolver}. Zero disables the decomposition.
+   */
+  protected int regionTiles = AbSolver.DEFAULT_REGION_TILES;
+
+  /**
+   * Computes and caches the values of regions.
+   */
+  protected RegionSolver regionSolver = new RegionSolver();
+
+  /**
+   * Moves, hashes of the resulting positions and their proof and disproof
+   * numbers per ply, reused by all nodes expanded at that ply so the search
+   * does not allocate.
+   */
+  private int[][] moveBuffers = new int[0][];
+  private long[][] childHashBuffers = new long[0][];
+  private int[][] childProofNumberBuffers = new int[0][];
+  private int[][] childDisproofNumberBuffers = new int[0][];
+
+  public DfpnSolver()
+  {
+    this(ZobristTranspositionTable.DEFAULT_SIZE_MB);
+  }
+
+  public DfpnSolver(int tableSizeMb)
+  {
+    this.tableSizeMb = tableSizeMb;
+  }
+
+  public void setRegionTiles(int regionTiles)
+  {
+    this.regionTiles = regionTiles;
+  }
+
+  /**
+   * Initializes and starts the search (once with vertical starting, once with
+   * horizontal starting) and prints out the results (Winner, duration, nodes
+   * explored).
+   *
+   * @param currentGameState The board for which the winner shall be determined.
+   */
+  public void search(GameState currentGameState)
+  {
+    //The player to move is part of the hashes, so one table serves both
+    //starting players and all later searches on boards of the same size
+    if (zobristKeys == null
+            || zobristKeys.getWidth() != currentGameState.getWidth()
+            || zobristKeys.getHeight() != currentGameState.getHeight())
+    {
+      zobristKeys = new ZobristKeys(currentGameState.getWidth(),
+              currentGameState.getHeight());
+      proofNumberTable = new ProofNumberTable(tableSizeMb);
+    }
+    proofNumberTable.resetStatistics();
+
+    long currentTime = System.currentTimeMillis();
+
+    nodeCounter = 0;
+
+    GameState gameStateVerticalStarts = new GameState(currentGameState);
+    GameState gameStateHorizontalStarts = new GameState(currentGameState);
+    if (!gameStateVerticalStarts.getVerticalsTurn())
+    {
+      gameStateVerticalStarts.toggleVerticalsTurn();
+    }
+    if (gameStateHorizontalStarts.getVerticalsTurn())
+    {
+      gameStateHorizontalStarts.toggleVerticalsTurn();
+    }
+    gameStateVerticalStarts.setZobristKeys(zobristKeys);
+    gameStateHorizontalStarts.setZobristKeys(zobristKeys);
+
+    boolean verticalStartsWins = isWin(gameStateVerticalStarts);
+    boolean horizontalStartsWins = isWin(gameStateHorizontalStarts);
+    long probes = proofNumberTable.getProbes();
+    long hits = proofNumberTable.getHits();
+
+    String result = AbSolver.describeResult(verticalStartsWins,
+            horizontalStartsWins);
+
+    //Measure duration
+    lastCalcDuration = System.currentTimeMillis() - currentTime;
+    double secDuration = ((double) lastCalcDuration) / 1000;
+
+    System.out.println("Result: " + result);
+
+    System.out.println("Search Duration: " + secDuration
+            + " seconds. Nodes searched: " + nodeCounter);
+    System.out.println("Proof number table hits: " + hits + " of " + probes
+            + " probes");
+  }
+
+  /**
+   * Proves or disproves a win for the player to move.
+   *
+   * @param gameState
+   * @return
+   */
+  private boolean isWin(GameState gameState)
+  {
+    nodeCounter++;
+    int outcome = evaluate(gameState);
+    if (outcome != UNKNOWN)
+    {
+      return outcome == WIN;
+    }
+    return getProofNumber(multipleIterativeDeepening(gameState, INFINITY,
+            INFINITY, 0)) == 0;
+  }
+
+  /**
+   * Decides a position without searching its moves, if possible: by the
+   * abort criteria or, once few tiles are left, as a sum of independent
+   * regions.
+   *
+   * @param gameState
+   * @return {@link #WIN} or {@link #LOSS} for the player to move, or
+   * {@link #UNKNOWN}.
+   */
+  private int evaluate(GameState gameState)
+  {
+    int realOwn = gameState.getRealMovesNumber(gameState.getVerticalsTurn());
+    int realOpp = gameState.getRealMovesNumber(!gameState.getVerticalsTurn());
+    int safeOwn = gameState.getSafeMovesNumber(gameState.getVerticalsTurn());
+    int safeOpp = gameState.getSafeMovesNumber(!gameState.getVerticalsTurn());
+
+    //No moves possible? Player to move loses. Otherwise the abort criteria
+    //may decide the position.
+    if (realOwn == 0 || realOwn < safeOpp)
+    {
+      return LOSS;
+    }
+    else if (safeOwn > realOpp)
+    {
+      return WIN;
+    }
+
+    //Solve independent regions separately and sum them up
+    if (gameState.getFreeTilesNumber() <= regionTiles
+            && gameState.hasSeveralRegions())
+    {
+      return regionSolver.isWin(RegionSolver.findRegions(
+              gameState.getFreeRows()), gameState.getVerticalsTurn())
+              ? WIN : LOSS;
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * Expands the tree below a position not decided by {@link #evaluate} until
+   * its proof number reaches the proof threshold or its disproof number
+   * reaches the disproof threshold, always descending into the child that is
+   * easiest to disprove. The resulting numbers are stored in the proof number
+   * table.
+   * <p>
+   * The children are generated, ordered and looked up once per call. Children
+   * not in the table are evaluated right away: those decided by
+   * {@link #evaluate} are stored as proven, the others start with proof and
+   * disproof numbers growing with how far their player to move is from the
+   * abort criteria.
+   *
+   * @param gameState
+   * @param proofThreshold
+   * @param disproofThreshold
+   * @param ply Number of moves made since the root, selects the buffers to
+   * use.
+   * @return The proof and disproof number of the position, see
+   * {@link #getProofNumber(long)} and {@link #getDisproofNumber(long)}.
+   */
+  private long multipleIterativeDeepening(GameState gameState,
+          int proofThreshold, int disproofThreshold, int ply)
+  {
+    long nodesBefore = nodeCounter;
+
+    allocateBuffers(ply, gameState);
+    int[] availableMoves = moveBuffers[ply];
+    long[] childHashes = childHashBuffers[ply];
+    int[] childProofNumbers = childProofNumberBuffers[ply];
+    int[] childDisproofNumbers = childDisproofNumberBuffers[ply];
+    int movesNumber = gameState.getAvailableMoves(availableMoves);
+    orderMoves(gameState, availableMoves, childProofNumbers, movesNumber);
+
+    for (int i = 0; i < movesNumber; i++)
+    {
+      gameState.doMove(availableMoves[i]);
+      gameState.toggleVerticalsTurn();
+      childHashes[i] = gameState.getCanonicalHash();
+      int entry = proofNumberTable.find(childHashes[i]);
+      if (entry >= 0)
+      {
+        childProofNumbers[i] = proofNumberTable.getProofNumber(entry);
+        childDisproofNumbers[i] = proofNumberTable.getDisproofNumber(entry);
+      }
+      else
+      {
+        nodeCounter++;
+        int outcome = evaluate(gameState);
+        if (outcome != UNKNOWN)
+        {
+          storeProven(gameState, outcome == WIN, 1);
+        }
+        childProofNumbers[i] = outcome == WIN ? 0 : outcome == LOSS ? INFINITY
+                : 1 + gameState.getRealMovesNumber(
+                        !gameState.getVerticalsTurn())
+                - gameState.getSafeMovesNumber(gameState.getVerticalsTurn());
+        childDisproofNumbers[i] = outcome == WIN ? INFINITY : outcome == LOSS
+                ? 0 : 1 + gameState.getRealMovesNumber(
+                        gameState.getVerticalsTurn())
+                - gameState.getSafeMovesNumber(!gameState.getVerticalsTurn());
+      }
+      gameState.undoMove();
+      gameState.toggleVerticalsTurn();
+      if (childDisproofNumbers[i] == 0)
+      {
+        //A child lost for the opponent wins the position at once
+        storeProven(gameState, true, nodeCounter - nodesBefore);
+        return numbers(0, INFINITY);
+      }
+    }
+
+    while (true)
+    {
+      //The player to move wins if any child is a loss for the opponent, and
+      //loses if all children are wins for the opponent
+      int proofNumber = INFINITY;
+      long disproofNumber = 0;
+      int bestChild = -1;
+      int secondProofNumber = INFINITY;
+      for (int i = 0; i < movesNumber; i++)
+      {
+        if (childDisproofNumbers[i] < proofNumber)
+        {
+          secondProofNumber = proofNumber;
+          proofNumber = childDisproofNumbers[i];
+          bestChild = i;
+        }
+        else if (childDisproofNumbers[i] < secondProofNumber)
+        {
+          secondProofNumber = childDisproofNumbers[i];
+        }
+        disproofNumber += childProofNumbers[i];
+      }
+      //Only a proven win has an infinite disproof number, large sums of
+      //finite numbers stay just below
+      disproofNumber = proofNumber == 0 ? INFINITY
+              : Math.min(INFINITY - 1, disproofNumber);
+
+      if (proofNumber >= proofThreshold || disproofNumber >= disproofThreshold
+              || proofNumber == 0 || disproofNumber == 0)
+      {
+        if (proofNumber == 0 || disproofNumber == 0)
+        {
+          storeProven(gameState, proofNumber == 0, nodeCounter - nodesBefore);
+        }
+        else
+        {
+          proofNumberTable.store(gameState.getCanonicalHash(), proofNumber,
+                  (int) disproofNumber, nodeCounter - nodesBefore);
+        }
+        return numbers(proofNumber, (int) disproofNumber);
+      }
+
+      //The child's proof number may grow until this position exceeds its
+      //disproof threshold, its disproof number until another child becomes
+      //the easiest one to disprove (with 25% slack, the 1+epsilon trick, to
+      //avoid switching back and forth between similar children)
+      long childProofThreshold = disproofThreshold == INFINITY ? INFINITY
+              : disproofThreshold - disproofNumber
+              + childProofNumbers[bestChild];
+      long childDisproofThreshold = Math.min(proofThreshold,
+              secondProofNumber == INFINITY ? INFINITY
+                      : (long) secondProofNumber + 1 + secondProofNumber / 4);
+
+      gameState.doMove(availableMoves[bestChild]);
+      gameState.toggleVerticalsTurn();
+      nodeCounter++;
+      long childNumbers = multipleIterativeDeepening(gameState,
+              (int) Math.min(INFINITY, childProofThreshold),
+              (int) childDisproofThreshold, ply + 1);
+      gameState.undoMove();
+      gameState.toggleVerticalsTurn();
+      childProofNumbers[bestChild] = getProofNumber(childNumbers);
+      childDisproofNumbers[bestChild] = getDisproofNumber(childNumbers);
+    }
+  }
+
+  /**
+   * Sorts moves by their move ordering delta, so among children equally easy
+   * to disprove the most promising one is searched first.
+   *
+   * @param gameState
+   * @param availableMoves
+   * @param moveOrderValues Receives the move ordering deltas, sorted along
+   * with the moves.
+   * @param movesNumber
+   */
+  private static void orderMoves(GameState gameState, int[] availableMoves,
+          int[] moveOrderValues, int movesNumber)
+  {
+    for (int i = 0; i < movesNumber; i++)
+    {
+      int move = availableMoves[i];
+      int moveOrderValue = gameState.getMoveOrderDelta(move);
+      int j = i - 1;
+      while (j >= 0 && moveOrderValues[j] > moveOrderValue)
+      {
+        availableMoves[j + 1] = availableMoves[j];
+        moveOrderValues[j + 1] = moveOrderValues[j];
+        j--;
+      }
+      availableMoves[j + 1] = move;
+      moveOrderValues[j + 1] = moveOrderValue;
+    }
+  }
+
+  /**
+   * Makes sure there are buffers for the children of a ply large enough for
+   * the moves of a board.
+   *
+   * @param ply
+   * @param gameState
+   */
+  private void allocateBuffers(int ply, GameState gameState)
+  {
+    if (ply >= moveBuffers.length)
+    {
+      int plies = Math.max(ply + 1, 2 * moveBuffers.length);
+      moveBuffers = Arrays.copyOf(moveBuffers, plies);
+      childHashBuffers = Arrays.copyOf(childHashBuffers, plies);
+      childProofNumberBuffers = Arrays.copyOf(childProofNumberBuffers, plies);
+      childDisproofNumberBuffers = Arrays.copyOf(childDisproofNumberBuffers,
+              plies);
+    }
+    int maxMovesNumber = gameState.getMaxMovesNumber();
+    if (moveBuffers[ply] == null || moveBuffers[ply].length < maxMovesNumber)
+    {
+      moveBuffers[ply] = new int[maxMovesNumber];
+      childHashBuffers[ply] = new long[maxMovesNumber];
+      childProofNumberBuffers[ply] = new int[maxMovesNumber];
+      childDisproofNumberBuffers[ply] = new int[maxMovesNumber];
+    }
+  }
+
+  /**
+   * Packs a proof and a disproof number into one value.
+   *
+   * @param proofNumber
+   * @param disproofNumber
+   * @return
+   */
+  private static long numbers(int proofNumber, int disproofNumber)
+  {
+    return (long) proofNumber << 32 | disproofNumber;
+  }
+
+  private static int getProofNumber(long numbers)
+  {
+    return (int) (numbers >>> 32);
+  }
+
+  private static int getDisproofNumber(long numbers)
+  {
+    return (int) numbers;
+  }
+
+  /**
+   * Stores a proven position under its canonical hash, which covers its
+   * flipped versions as well.
+   *
+   * @param gameState
+   * @param win Whether the player to move wins.
+   * @param work Number of nodes searched to prove the position.
+   */
+  private void storeProven(GameState gameState, boolean win, long work)
+  {
+    int proofNumber = win ? 0 : INFINITY;
+    int disproofNumber = win ? INFINITY : 0;
+    proofNumberTable.store(gameState.getCanonicalHash(), proofNumber,
+            disproofNumber, work);
+  }
+}
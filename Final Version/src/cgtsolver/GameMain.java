@@ -1,5 +1,8 @@
 package cgtsolver;
 
+import cgsuite.BoundedContext;
+import cgsuite.Context;
+import java.io.File;
 import java.util.InputMismatchException;
 import java.util.Scanner;
 
@@ -11,8 +14,14 @@ import java.util.Scanner;
  */
 public class GameMain
 {
-  public static void main(String args[])
+  public static void main(String args[]) throws InterruptedException
   {
+    if (args.length > 0 && args[0].equals("sweep"))
+    {
+      sweep(args);
+      return;
+    }
+
     int width = -1;
     int height = -1;
     while (width == -1 || height == -1)
@@ -39,7 +48,136 @@ public class GameMain
 
     System.out.println("Running solver ...");
     AbSolver abSolver = new AbSolver();
+    if (args.length > 1)
+    {
+      //Optional arguments: transposition table size in megabytes, threads,
+      //parallel mode (root_split, lazy_smp or young_brothers_wait), binary
+      //(sequential win/loss search) or dfpn
+      abSolver = new AbSolver(Integer.parseInt(args[0]),
+              Integer.parseInt(args[1]));
+      if (args.length > 2 && args[2].equalsIgnoreCase("binary"))
+      {
+        abSolver.setBinarySearch(true);
+      }
+      else if (args.length > 2 && !args[2].equalsIgnoreCase("dfpn"))
+      {
+        abSolver.setParallelMode(AbSolver.ParallelMode.valueOf(
+                args[2].toUpperCase()));
+      }
+    }
+    else if (args.length > 0)
+    {
+      abSolver = new AbSolver(Integer.parseInt(args[0]));
+    }
+    String tableFile = System.getProperty("cgtsolver.tableFile");
+    if (tableFile != null)
+    {
+      //Keep proven positions in this file for later runs
+      abSolver.setTranspositionTableFile(new File(tableFile));
+    }
+    if (Boolean.getBoolean("cgtsolver.etc"))
+    {
+      //Look up all children in the transposition table before searching them
+      abSolver.setEnhancedTranspositionCutoffs(true);
+    }
+    BoundedContext boundedContext = installBoundedContext();
     GameState gameState = new GameState(width, height);
-    abSolver.search(gameState);
+    if (args.length > 2 && args[2].equalsIgnoreCase("dfpn"))
+    {
+      //Proof-number search instead of alpha-beta
+      new DfpnSolver(Integer.parseInt(args[0])).search(gameState);
+    }
+    else if (args.length > 3 && args[3].equals("scaling"))
+    {
+      //Optional fourth argument: compare the search with 1, 2, 4, ... threads
+      abSolver.searchScaling(gameState);
+    }
+    else
+    {
+      abSolver.search(gameState);
+    }
+    if (boundedContext != null)
+    {
+      System.out.print(boundedContext.createReport());
+    }
+  }
+
+  /**
+   * Solves all boards of a range of sizes and prints the results as CSV.
+   * Arguments: <code>sweep widths heights [jobs] [ttMb]</code>, where the
+   * widths and heights are ranges like <code>3-8</code> or single numbers.
+   *
+   * @param args
+   * @throws InterruptedException
+   */
+  private static void sweep(String args[]) throws InterruptedException
+  {
+    if (args.length < 3)
+    {
+      System.out.println("Usage: sweep <widths> <heights> [jobs] [ttMb], "
+              + "e.g. sweep 3-8 3-8");
+      return;
+    }
+    int[] widths = parseRange(args[1]);
+    int[] heights = parseRange(args[2]);
+    BoardSweep boardSweep = new BoardSweep(widths[0], widths[1], heights[0],
+            heights[1]);
+    if (args.length > 3)
+    {
+      boardSweep.setJobs(Integer.parseInt(args[3]));
+    }
+    if (args.length > 4)
+    {
+      boardSweep.setTranspositionTableSizeMb(Integer.parseInt(args[4]));
+    }
+    BoundedContext boundedContext = installBoundedContext();
+    boardSweep.run(System.out);
+    if (boundedContext != null)
+    {
+      //Not among the CSV rows
+      System.err.print(boundedContext.createReport());
+    }
+  }
+
+  /**
+   * Bounds the cache of game sums etc. used when solving regions, if the
+   * system property <code>cgtsolver.contextCacheSize</code> is set.
+   *
+   * @return The installed context, null if the property is not set.
+   */
+  private static BoundedContext installBoundedContext()
+  {
+    Integer contextCacheSize = Integer.getInteger("cgtsolver.contextCacheSize");
+    if (contextCacheSize == null)
+    {
+      return null;
+    }
+    BoundedContext boundedContext = new BoundedContext(contextCacheSize);
+    Context.setActiveContext(boundedContext);
+    return boundedContext;
+  }
+
+  /**
+   * Parses a range like <code>3-8</code> or a single number.
+   *
+   * @param range
+   * @return The lower and upper bound.
+   */
+  private static int[] parseRange(String range)
+  {
+    int separator = range.indexOf('-');
+    if (separator < 0)
+    {
+      int value = Integer.parseInt(range);
+      return new int[]
+      {
+        value, value
+      };
+    }
+    return new int[]
+    {
+      Integer.parseInt(range.substring(0, separator)),
+      Integer.parseInt(range.substring(separator + 1))
+    };
   }
 }
@@ -2,6 +2,7 @@ package cgtsolver;
 
 import java.awt.Point;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -9,19 +10,127 @@ import java.util.List;
  * tiles, player to move and the move history so far. Enables making and undoing
  * moves, as well as getting the number of remaining real and safe moves for
  * either player.
+ * <p>
+ * The occupied tiles are kept as bitboards. Boards with up to 64 tiles are
+ * stored in a single <code>long</code> (bit <code>y * width + x</code>),
+ * larger boards in one row mask per row (bit <code>x</code> of
+ * <code>rows[y]</code>). Piece placements are found by shifting the free tiles
+ * against themselves, e.g. <code>f &amp; (f &gt;&gt; 1) &amp; (f &gt;&gt; 2)</code>
+ * for horizontal pieces.
+ * <p>
+ * The real and safe moves of a horizontal piece depend only on its row and the
+ * two rows above and below, those of a vertical piece on its column and its
+ * neighbouring columns. So the numbers are kept per row and per column, and a
+ * move only recounts the rows and columns within two tiles of the piece.
+ * <p>
+ * Besides as {@link Piece}s, moves can be given as <code>int</code>s: the
+ * index <code>y * width + x</code> of the lowest tile of the piece shifted left
+ * by one, with the lowest bit set for vertical pieces. These are listed into
+ * and made from caller owned arrays, so searching allocates nothing.
  *
  * @author daniel
  */
 public class GameState
 {
-  private boolean[][] board;
   private int width;
   private int height;
 
   /**
-   * List of the moves made so far by both players.
+   * True if the board fits into the single <code>cells</code> bitboard,
+   * otherwise the <code>rows</code> masks are used.
    */
-  private List<Piece> moveHistory;
+  private final boolean compact;
+
+  /**
+   * Occupied tiles of a compact board, bit <code>y * width + x</code>.
+   */
+  private long cells;
+
+  /**
+   * Occupied tiles row by row, bit <code>x</code> of <code>rows[y]</code>.
+   * Kept for boards of all sizes.
+   */
+  private long[] rows;
+
+  /**
+   * Occupied tiles column by column, bit <code>y</code> of
+   * <code>columns[x]</code>.
+   */
+  private long[] columns;
+
+  /**
+   * All tiles of a compact board.
+   */
+  private final long fullMask;
+
+  /**
+   * All tiles of a single row or column.
+   */
+  private final long rowMask;
+  private final long columnMask;
+
+  /**
+   * Real and safe horizontal moves per row, real and safe vertical moves per
+   * column, and their totals. Compact boards only keep the totals, since
+   * recounting the whole board is just a few word operations there.
+   */
+  private int[] realRowMoves;
+  private int[] safeRowMoves;
+  private int[] realColumnMoves;
+  private int[] safeColumnMoves;
+  private int realHorizontalMoves;
+  private int safeHorizontalMoves;
+  private int realVerticalMoves;
+  private int safeVerticalMoves;
+
+  /**
+   * Real and safe moves numbers of the rows and columns (the totals on compact
+   * boards) before they were recounted by the moves made, so undoing a move
+   * just restores them.
+   */
+  private int[] movesNumbersHistory = new int[64];
+  private int movesNumbersHistorySize;
+
+  /**
+   * Compact board tiles on which a horizontal piece may start (leftmost tile).
+   */
+  private final long horizontalStartMask;
+
+  /**
+   * Compact board tiles on which a vertical piece may start (topmost tile).
+   */
+  private final long verticalStartMask;
+
+  /**
+   * Zobrist keys of every tile (index <code>y * width + x</code>) for the
+   * board as is, flipped horizontally, flipped vertically and flipped both
+   * ways. Null as long as no transposition table is attached.
+   */
+  private long[][] tileKeys;
+
+  /**
+   * Running Zobrist hashes of the board and its flipped variants, updated
+   * with the three tiles of every move made or undone.
+   */
+  private long[] hashes = new long[4];
+
+  /**
+   * Zobrist key included in all hashes while vertical is to move, so the same
+   * board with different players to move hashes differently.
+   */
+  private long sideToMoveKey;
+
+  /**
+   * Moves made so far by both players, encoded as <code>int</code>s.
+   */
+  private int[] moveHistory;
+  private int moveHistorySize;
+
+  /**
+   * Free tiles and working space of {@link #hasSeveralRegions()}, allocated
+   * on first use.
+   */
+  private long[] regionBuffer;
 
   /**
    * Stores which player is to move.
@@ -31,12 +140,146 @@ public class GameState
   public static final boolean FREE = false;
   public static final boolean OCCUPIED = true;
 
+  /**
+   * For every run length modulo 3 carried into a byte of free tiles (upper
+   * bits of the index) and every byte: the pieces completed within the byte
+   * (lower 4 bits) and the run length modulo 3 carried out (upper bits).
+   */
+  private static final byte[] LINE_MOVES = new byte[3 << 8];
+
+  static
+  {
+    for (int runLength = 0; runLength < 3; runLength++)
+    {
+      for (int free = 0; free < 256; free++)
+      {
+        int length = runLength;
+        int movesNumber = 0;
+        for (int bit = 0; bit < 8; bit++)
+        {
+          if ((free >>> bit & 1) == 0)
+          {
+            length = 0;
+          }
+          else if (++length == 3)
+          {
+            length = 0;
+            movesNumber++;
+          }
+        }
+        LINE_MOVES[runLength << 8 | free] = (byte) (length << 4 | movesNumber);
+      }
+    }
+  }
+
   public GameState(int width, int height)
   {
+    if (width > 64 || height > 64)
+    {
+      throw new IllegalArgumentException("Board width and height must not "
+              + "exceed 64 tiles, was " + width + "x" + height);
+    }
     this.width = width;
     this.height = height;
-    board = new boolean[width][height];
-    moveHistory = new ArrayList<>();
+    moveHistory = new int[width * height / 3 + 1];
+
+    rows = new long[height];
+    columns = new long[width];
+    rowMask = lowBits(width);
+    columnMask = lowBits(height);
+
+    compact = width * height <= 64;
+    if (compact)
+    {
+      fullMask = lowBits(width * height);
+      long rowStarts = width >= 3 ? lowBits(width - 2) : 0;
+      long starts = 0;
+      for (int j = 0; j < height; j++)
+      {
+        starts |= rowStarts << (j * width);
+      }
+      horizontalStartMask = starts;
+      verticalStartMask = height >= 3 ? lowBits((height - 2) * width) : 0;
+    }
+    else
+    {
+      fullMask = 0;
+      horizontalStartMask = 0;
+      verticalStartMask = 0;
+    }
+
+    realRowMoves = new int[height];
+    safeRowMoves = new int[height];
+    realColumnMoves = new int[width];
+    safeColumnMoves = new int[width];
+    if (compact)
+    {
+      countCompactMovesNumbers();
+    }
+    else
+    {
+      updateMovesNumbers(0, width - 1, 0, height - 1, 0, width - 1, 0,
+              height - 1);
+    }
+  }
+
+  /**
+   * Creates a copy of the board of another game state, including the player to
+   * move but without its move history.
+   *
+   * @param other
+   */
+  public GameState(GameState other)
+  {
+    this(other.width, other.height);
+    cells = other.cells;
+    System.arraycopy(other.rows, 0, rows, 0, height);
+    System.arraycopy(other.columns, 0, columns, 0, width);
+    System.arraycopy(other.realRowMoves, 0, realRowMoves, 0, height);
+    System.arraycopy(other.safeRowMoves, 0, safeRowMoves, 0, height);
+    System.arraycopy(other.realColumnMoves, 0, realColumnMoves, 0, width);
+    System.arraycopy(other.safeColumnMoves, 0, safeColumnMoves, 0, width);
+    realHorizontalMoves = other.realHorizontalMoves;
+    safeHorizontalMoves = other.safeHorizontalMoves;
+    realVerticalMoves = other.realVerticalMoves;
+    safeVerticalMoves = other.safeVerticalMoves;
+    verticalsTurn = other.verticalsTurn;
+    tileKeys = other.tileKeys;
+    sideToMoveKey = other.sideToMoveKey;
+    System.arraycopy(other.hashes, 0, hashes, 0, hashes.length);
+  }
+
+  /**
+   * Takes the Zobrist keys of the board size and computes the hashes of the
+   * current board and player to move. From then on they are kept up to date
+   * by {@link #doMove(int)}, {@link #undoMove()} and
+   * {@link #toggleVerticalsTurn()}.
+   *
+   * @param keys
+   */
+  public void setZobristKeys(ZobristKeys keys)
+  {
+    tileKeys = new long[4][width * height];
+    sideToMoveKey = keys.getSideToMoveKey();
+    for (int variant = 0; variant < 4; variant++)
+    {
+      boolean horizontallyFlipped = (variant & 1) != 0;
+      boolean verticallyFlipped = (variant & 2) != 0;
+      hashes[variant] = verticalsTurn ? sideToMoveKey : 0;
+      for (int i = 0; i < width; i++)
+      {
+        for (int j = 0; j < height; j++)
+        {
+          long key = keys.getTileKey(i, j, horizontallyFlipped,
+                  verticallyFlipped);
+          tileKeys[variant][j * width + i] = key;
+          if (isOccupied(i, j))
+          {
+            hashes[variant] ^= key;
+          }
+        }
+      }
+    }
   }
 
   /**
@@ -47,11 +290,36 @@ public class GameState
    */
   public void doMove(Piece piece)
   {
-    board[piece.p1.x][piece.p1.y] = OCCUPIED;
-    board[piece.p2.x][piece.p2.y] = OCCUPIED;
-    board[piece.p3.x][piece.p3.y] = OCCUPIED;
+    doMove(toMove(piece));
+  }
+
+  /**
+   * Occupies the tiles of an encoded move on the board and stores the move in
+   * history.
+   *
+   * @param move
+   */
+  public void doMove(int move)
+  {
+    int index = move >>> 1;
+    int x = index % width;
+    int y = index / width;
+    if ((move & 1) != 0)
+    {
+      setTile(x, y, OCCUPIED);
+      setTile(x, y + 1, OCCUPIED);
+      setTile(x, y + 2, OCCUPIED);
+      updateMovesNumbers(x, x, y, y + 2);
+    }
+    else
+    {
+      setTile(x, y, OCCUPIED);
+      setTile(x + 1, y, OCCUPIED);
+      setTile(x + 2, y, OCCUPIED);
+      updateMovesNumbers(x, x + 2, y, y);
+    }
 
-    moveHistory.add(piece);
+    moveHistory[moveHistorySize++] = move;
   }
 
   /**
@@ -59,10 +327,68 @@ public class GameState
    */
   public void undoMove()
   {
-    Piece piece = moveHistory.remove(moveHistory.size() - 1);
-    board[piece.p1.x][piece.p1.y] = FREE;
-    board[piece.p2.x][piece.p2.y] = FREE;
-    board[piece.p3.x][piece.p3.y] = FREE;
+    int move = moveHistory[--moveHistorySize];
+    int index = move >>> 1;
+    int x = index % width;
+    int y = index / width;
+    if ((move & 1) != 0)
+    {
+      setTile(x, y, FREE);
+      setTile(x, y + 1, FREE);
+      setTile(x, y + 2, FREE);
+      restoreMovesNumbers(x, x, y, y + 2);
+    }
+    else
+    {
+      setTile(x, y, FREE);
+      setTile(x + 1, y, FREE);
+      setTile(x + 2, y, FREE);
+      restoreMovesNumbers(x, x + 2, y, y);
+    }
+  }
+
+  /**
+   * Encodes a piece as an <code>int</code> move.
+   *
+   * @param piece
+   * @return
+   */
+  public int toMove(Piece piece)
+  {
+    int x = Math.min(piece.p1.x, piece.p3.x);
+    int y = Math.min(piece.p1.y, piece.p3.y);
+    return (y * width + x) << 1 | (piece.p1.x == piece.p3.x ? 1 : 0);
+  }
+
+  /**
+   * Decodes an <code>int</code> move into a piece.
+   *
+   * @param move
+   * @return
+   */
+  public Piece toPiece(int move)
+  {
+    int index = move >>> 1;
+    int x = index % width;
+    int y = index / width;
+    if ((move & 1) != 0)
+    {
+      return new Piece(new Point(x, y + 2), new Point(x, y + 1),
+              new Point(x, y));
+    }
+    return new Piece(new Point(x, y), new Point(x + 1, y),
+            new Point(x + 2, y));
+  }
+
+  /**
+   * Gets an upper bound of the number of moves available to a player, which
+   * is the size needed for the array passed to {@link #getAvailableMoves(int[])}.
+   *
+   * @return
+   */
+  public int getMaxMovesNumber()
+  {
+    return width * height;
   }
 
   /**
@@ -83,64 +409,79 @@ public class GameState
    */
   public List<Piece> getAvailableMoves(boolean verticalsTurn)
   {
-    List<Piece> availableMoves = new ArrayList<>();
+    int[] moves = new int[getMaxMovesNumber()];
+    int movesNumber = getAvailableMoves(verticalsTurn, moves);
+    List<Piece> availableMoves = new ArrayList<>(movesNumber);
+    for (int i = 0; i < movesNumber; i++)
+    {
+      availableMoves.add(toPiece(moves[i]));
+    }
+    return availableMoves;
+  }
 
-    boolean[][] localTiles = board;
+  /**
+   * Writes the encoded available moves for the player to move into an array.
+   * Convenience method.
+   *
+   * @param moves Array of at least {@link #getMaxMovesNumber()} elements.
+   * @return The number of moves written.
+   */
+  public int getAvailableMoves(int[] moves)
+  {
+    return getAvailableMoves(verticalsTurn, moves);
+  }
 
+  /**
+   * Writes the encoded available moves for a certain player into an array.
+   * Horizontal moves are listed row by row from left to right, vertical moves
+   * column by column from bottom to top.
+   *
+   * @param verticalsTurn
+   * @param moves Array of at least {@link #getMaxMovesNumber()} elements.
+   * @return The number of moves written.
+   */
+  public int getAvailableMoves(boolean verticalsTurn, int[] moves)
+  {
+    int movesNumber = 0;
     if (verticalsTurn)
     {
-      //Just temporarely rotate the game for vertical player (turn 90° cw)
-      localTiles = new boolean[height][width];
-
       for (int i = 0; i < width; i++)
       {
-        for (int j = 0; j < height; j++)
+        long free = ~columns[i] & columnMask;
+        long starts = free & (free >>> 1) & (free >>> 2);
+        while (starts != 0)
         {
-          localTiles[height - 1 - j][i] = board[i][j];
+          int j = 63 - Long.numberOfLeadingZeros(starts);
+          starts &= ~(1L << j);
+          moves[movesNumber++] = (j * width + i) << 1 | 1;
         }
       }
     }
-
-    for (int j = 0; j < localTiles[0].length; j++)
+    else if (compact)
     {
-      widthloop:
-      for (int i = 0; i < localTiles.length; i++)
+      long starts = horizontalStarts(~cells & fullMask);
+      while (starts != 0)
       {
-        if (i + 2 >= localTiles.length)
-        {
-          continue;
-        }
-
-        for (int offset = 2; offset >= 0; offset--)
-        {
-          if (localTiles[i + offset][j])
-          {
-            //Skip behind the occupied tile
-            i += offset;
-            continue widthloop;
-          }
-        }
-        Piece piece = new Piece(new Point(i, j), new Point(i + 1, j),
-                new Point(i + 2, j));
-        availableMoves.add(piece);
+        int index = Long.numberOfTrailingZeros(starts);
+        starts &= starts - 1;
+        moves[movesNumber++] = index << 1;
       }
     }
-
-    if (verticalsTurn)
+    else
     {
-      // Rotate back indices for vertical player
-      List<Piece> realAvailableMoves = new ArrayList<>();
-      for (Piece availableMove : availableMoves)
+      for (int j = 0; j < height; j++)
       {
-        Piece piece = new Piece(
-                new Point(availableMove.p1.y, height - 1 - availableMove.p1.x),
-                new Point(availableMove.p2.y, height - 1 - availableMove.p2.x),
-                new Point(availableMove.p3.y, height - 1 - availableMove.p3.x));
-        realAvailableMoves.add(piece);
+        long free = ~rows[j] & rowMask;
+        long starts = free & (free >>> 1) & (free >>> 2);
+        while (starts != 0)
+        {
+          int i = Long.numberOfTrailingZeros(starts);
+          starts &= starts - 1;
+          moves[movesNumber++] = (j * width + i) << 1;
+        }
       }
-      availableMoves = realAvailableMoves;
     }
-    return availableMoves;
+    return movesNumber;
   }
 
   /**
@@ -152,119 +493,495 @@ public class GameState
    */
   public int getRealMovesNumber(boolean verticalsTurn)
   {
-    int realMovesNumber = 0;
+    return verticalsTurn ? realVerticalMoves : realHorizontalMoves;
+  }
 
-    boolean[][] localTiles = board;
+  /**
+   * Returns the number of safe moves: the number of moves a player can make if
+   * that can not be prevented by any move of the opponent. This defines an
+   * lower boundary.
+   *
+   * @param verticalsTurn
+   * @return
+   */
+  public int getSafeMovesNumber(boolean verticalsTurn)
+  {
+    return verticalsTurn ? safeVerticalMoves : safeHorizontalMoves;
+  }
 
-    if (verticalsTurn)
+  /**
+   * Recounts the real and safe moves in the rows and columns a piece may have
+   * changed them in, saving the previous numbers for undoing the move.
+   *
+   * @param pieceFromX
+   * @param pieceToX
+   * @param pieceFromY
+   * @param pieceToY
+   */
+  private void updateMovesNumbers(int pieceFromX, int pieceToX,
+          int pieceFromY, int pieceToY)
+  {
+    if (compact)
     {
-      //Just temporarely rotate the game for vertical player (turn 90° cw)
-      localTiles = new boolean[height][width];
-
-      for (int i = 0; i < width; i++)
+      if (movesNumbersHistorySize + 4 > movesNumbersHistory.length)
       {
-        for (int j = 0; j < height; j++)
-        {
-          localTiles[height - 1 - j][i] = board[i][j];
-        }
+        movesNumbersHistory = Arrays.copyOf(movesNumbersHistory,
+                2 * movesNumbersHistory.length);
       }
+      movesNumbersHistory[movesNumbersHistorySize++] = realHorizontalMoves;
+      movesNumbersHistory[movesNumbersHistorySize++] = safeHorizontalMoves;
+      movesNumbersHistory[movesNumbersHistorySize++] = realVerticalMoves;
+      movesNumbersHistory[movesNumbersHistorySize++] = safeVerticalMoves;
+      countCompactMovesNumbers();
+      return;
     }
 
-    for (int j = 0; j < localTiles[0].length; j++)
+    int fromX = Math.max(pieceFromX - 2, 0);
+    int toX = Math.min(pieceToX + 2, width - 1);
+    int fromY = Math.max(pieceFromY - 2, 0);
+    int toY = Math.min(pieceToY + 2, height - 1);
+
+    int required = movesNumbersHistorySize + 2 * (toX - fromX + toY - fromY + 2);
+    if (required > movesNumbersHistory.length)
     {
-      widthloop:
-      for (int i = 0; i < localTiles.length; i++)
-      {
-        if (i + 2 >= localTiles.length)
-        {
-          continue;
-        }
+      movesNumbersHistory = Arrays.copyOf(movesNumbersHistory,
+              Math.max(required, 2 * movesNumbersHistory.length));
+    }
+    for (int j = fromY; j <= toY; j++)
+    {
+      movesNumbersHistory[movesNumbersHistorySize++] = realRowMoves[j];
+      movesNumbersHistory[movesNumbersHistorySize++] = safeRowMoves[j];
+    }
+    for (int i = fromX; i <= toX; i++)
+    {
+      movesNumbersHistory[movesNumbersHistorySize++] = realColumnMoves[i];
+      movesNumbersHistory[movesNumbersHistorySize++] = safeColumnMoves[i];
+    }
+    updateMovesNumbers(fromX, toX, fromY, toY, pieceFromX, pieceToX,
+            pieceFromY, pieceToY);
+  }
 
-        for (int offset = 2; offset >= 0; offset--)
-        {
-          if (localTiles[i + offset][j])
-          {
-            //Skip behind the occupied tile
-            i += offset;
-            continue widthloop;
-          }
-        }
-        realMovesNumber++;
-        i += 2;
-      }
+  /**
+   * Restores the real and safe moves numbers from before a piece was placed.
+   *
+   * @param pieceFromX
+   * @param pieceToX
+   * @param pieceFromY
+   * @param pieceToY
+   */
+  private void restoreMovesNumbers(int pieceFromX, int pieceToX,
+          int pieceFromY, int pieceToY)
+  {
+    if (compact)
+    {
+      safeVerticalMoves = movesNumbersHistory[--movesNumbersHistorySize];
+      realVerticalMoves = movesNumbersHistory[--movesNumbersHistorySize];
+      safeHorizontalMoves = movesNumbersHistory[--movesNumbersHistorySize];
+      realHorizontalMoves = movesNumbersHistory[--movesNumbersHistorySize];
+      return;
+    }
+
+    int fromX = Math.max(pieceFromX - 2, 0);
+    int toX = Math.min(pieceToX + 2, width - 1);
+    int fromY = Math.max(pieceFromY - 2, 0);
+    int toY = Math.min(pieceToY + 2, height - 1);
+
+    for (int i = toX; i >= fromX; i--)
+    {
+      int safe = movesNumbersHistory[--movesNumbersHistorySize];
+      int real = movesNumbersHistory[--movesNumbersHistorySize];
+      realVerticalMoves += real - realColumnMoves[i];
+      safeVerticalMoves += safe - safeColumnMoves[i];
+      realColumnMoves[i] = real;
+      safeColumnMoves[i] = safe;
+    }
+    for (int j = toY; j >= fromY; j--)
+    {
+      int safe = movesNumbersHistory[--movesNumbersHistorySize];
+      int real = movesNumbersHistory[--movesNumbersHistorySize];
+      realHorizontalMoves += real - realRowMoves[j];
+      safeHorizontalMoves += safe - safeRowMoves[j];
+      realRowMoves[j] = real;
+      safeRowMoves[j] = safe;
     }
-    return realMovesNumber;
   }
 
   /**
-   * Returns the number of safe moves: the number of moves a player can make if
-   * that can not be prevented by any move of the opponent. This defines an
-   * lower boundary.
+   * Recounts the real and safe moves in a range of columns and rows and
+   * updates the totals. Real moves only change in the lines whose tiles
+   * changed.
    *
-   * @param verticalsTurn
+   * @param fromX
+   * @param toX
+   * @param fromY
+   * @param toY
+   * @param changedFromX
+   * @param changedToX
+   * @param changedFromY
+   * @param changedToY
+   */
+  private void updateMovesNumbers(int fromX, int toX, int fromY, int toY,
+          int changedFromX, int changedToX, int changedFromY, int changedToY)
+  {
+    for (int j = fromY; j <= toY; j++)
+    {
+      long free = ~rows[j] & rowMask;
+      int real = j >= changedFromY && j <= changedToY ? countLineMoves(free)
+              : realRowMoves[j];
+      //Occupy all tiles where the opponent could move.
+      int safe = countLineMoves(free & ~crossingCover(rows, j, rowMask));
+      realHorizontalMoves += real - realRowMoves[j];
+      safeHorizontalMoves += safe - safeRowMoves[j];
+      realRowMoves[j] = real;
+      safeRowMoves[j] = safe;
+    }
+    for (int i = fromX; i <= toX; i++)
+    {
+      long free = ~columns[i] & columnMask;
+      int real = i >= changedFromX && i <= changedToX ? countLineMoves(free)
+              : realColumnMoves[i];
+      int safe = countLineMoves(free & ~crossingCover(columns, i, columnMask));
+      realVerticalMoves += real - realColumnMoves[i];
+      safeVerticalMoves += safe - safeColumnMoves[i];
+      realColumnMoves[i] = real;
+      safeColumnMoves[i] = safe;
+    }
+  }
+
+  /**
+   * Gets the change a move would make to the real and safe moves numbers of
+   * the player to move minus those of the opponent, i.e.
+   * <code>(realOwn - nextRealOwn) - (realOpp - nextRealOpp) + (safeOwn -
+   * nextSafeOwn) - (safeOpp - nextSafeOpp)</code>, without making the move.
+   * <p>
+   * Compact boards just count the moves left on the board with the piece
+   * placed, which takes a few word operations. On larger boards a piece only
+   * changes the free and coverable tiles of the lines near it within a window
+   * of three tiles, and the moves of a line only within the runs of free
+   * tiles touching the window. So every line takes a constant number of word
+   * operations: the line of the piece and the three lines crossing it for the
+   * real moves, the lines within two tiles for the safe moves.
+   *
+   * @param move
    * @return
    */
-  public int getSafeMovesNumber(boolean verticalsTurn)
+  public int getMoveOrderDelta(int move)
   {
-    int safeMovesNumber = 0;
+    int index = move >>> 1;
+    if (compact)
+    {
+      long piece = (move & 1) != 0
+              ? (1L | 1L << width | 1L << (2 * width)) << index : 7L << index;
+      long free = ~(cells | piece) & fullMask;
+      long horizontalStarts = horizontalStarts(free);
+      long verticalStarts = verticalStarts(free);
+      long horizontalFree = free & ~(verticalStarts | (verticalStarts << width)
+              | (verticalStarts << (2 * width)));
+      long verticalFree = free & ~(horizontalStarts | (horizontalStarts << 1)
+              | (horizontalStarts << 2));
+      int horizontal = countCompactMoves(horizontalStarts, 1)
+              + countCompactMoves(horizontalStarts(horizontalFree), 1);
+      int vertical = countCompactMoves(verticalStarts, width)
+              + countCompactMoves(verticalStarts(verticalFree), width);
+      int before = realVerticalMoves + safeVerticalMoves
+              - realHorizontalMoves - safeHorizontalMoves;
+      return verticalsTurn ? before - (vertical - horizontal)
+              : (vertical - horizontal) - before;
+    }
+    int x = index % width;
+    int y = index / width;
+    if ((move & 1) != 0)
+    {
+      return getMoveOrderDelta(columns, columnMask, rows, rowMask, x, y);
+    }
+    return getMoveOrderDelta(rows, rowMask, columns, columnMask, y, x);
+  }
 
-    boolean[][] localTiles = new boolean[width][height];
-    //Create deep copy
-    for (int i = 0; i < width; i++)
+  /**
+   * Gets the move ordering delta of a piece placed along a line.
+   *
+   * @param ownLines Lines of the player to move, i.e. the rows for
+   * horizontal pieces.
+   * @param ownMask
+   * @param crossingLines Lines of the opponent.
+   * @param crossingMask
+   * @param line Line of the piece.
+   * @param position Lowest tile of the piece within its line.
+   * @return
+   */
+  private static int getMoveOrderDelta(long[] ownLines, long ownMask,
+          long[] crossingLines, long crossingMask, int line, int position)
+  {
+    long piece = 7L << position;
+    long tile = 1L << line;
+    //Keep the window of the crossing lines within the word
+    int crossingWindow = Math.min(line, 61);
+
+    //Real moves of the player to move along the line of the piece
+    long free = ~ownLines[line] & ownMask;
+    int delta = countWindowMovesDelta(free, free & ~piece, position);
+
+    //Real moves of the opponent in the lines crossing the piece
+    for (int i = position; i <= position + 2; i++)
     {
-      System.arraycopy(board[i], 0, localTiles[i], 0, height);
+      long crossingFree = ~crossingLines[i] & crossingMask;
+      delta -= countWindowMovesDelta(crossingFree, crossingFree & ~tile,
+              crossingWindow);
     }
 
-    //Occupy all tiles where the opponent could move.
-    List<Piece> opponentsMoves = getAvailableMoves(!verticalsTurn);
-    for (Piece piece : opponentsMoves)
+    //Safe moves of the player to move in the lines near the piece
+    int toLine = Math.min(line + 2, ownLines.length - 1);
+    for (int j = Math.max(line - 2, 0); j <= toLine; j++)
     {
-      localTiles[piece.p1.x][piece.p1.y] = OCCUPIED;
-      localTiles[piece.p2.x][piece.p2.y] = OCCUPIED;
-      localTiles[piece.p3.x][piece.p3.y] = OCCUPIED;
+      long lineFree = ~ownLines[j] & ownMask;
+      long safe = lineFree & ~crossingCover(ownLines, j, ownMask);
+      long nextSafe = (j == line ? lineFree & ~piece : lineFree)
+              & ~crossingCover(ownLines, j, ownMask, line, line, piece);
+      delta += countWindowMovesDelta(safe, nextSafe, position);
     }
 
-    //Then, just get the maximum numbers of moves possible for this player
-    
-    if (verticalsTurn)
+    //Safe moves of the opponent in the lines near the piece
+    int toPosition = Math.min(position + 4, crossingLines.length - 1);
+    for (int i = Math.max(position - 2, 0); i <= toPosition; i++)
     {
-      //Just temporarely rotate the game for vertical player (turn 90° cw)
-      boolean[][] rotatedLocalTiles = new boolean[height][width];
+      long crossingFree = ~crossingLines[i] & crossingMask;
+      long safe = crossingFree & ~crossingCover(crossingLines, i,
+              crossingMask);
+      long nextSafe = (i >= position && i <= position + 2
+              ? crossingFree & ~tile : crossingFree)
+              & ~crossingCover(crossingLines, i, crossingMask, position,
+                      position + 2, tile);
+      delta -= countWindowMovesDelta(safe, nextSafe, crossingWindow);
+    }
+    return delta;
+  }
 
-      for (int i = 0; i < width; i++)
+  /**
+   * Gets by how many moves the free tiles of a line lose by changing within a
+   * window of three tiles. Only the runs touching the window are counted.
+   *
+   * @param free
+   * @param nextFree Differs from <code>free</code> only within the window.
+   * @param from Lowest tile of the window, at most 61.
+   * @return
+   */
+  private static int countWindowMovesDelta(long free, long nextFree, int from)
+  {
+    if (free == nextFree)
+    {
+      return 0;
+    }
+    //Lengths of the runs of free tiles ending just below and starting just
+    //above the window
+    long below = ~free & lowBits(from);
+    int before = from - 64 + Long.numberOfLeadingZeros(below);
+    long above = ~free & ~lowBits(from + 3);
+    int after = Long.numberOfTrailingZeros(above) - from - 3;
+    return countWindowMoves(before, (int) (free >>> from) & 7, after)
+            - countWindowMoves(before, (int) (nextFree >>> from) & 7, after);
+  }
+
+  /**
+   * Counts the moves fitting on a run of free tiles, a window of three tiles
+   * and another run of free tiles in a row.
+   *
+   * @param before
+   * @param window Free tiles of the window.
+   * @param after
+   * @return
+   */
+  private static int countWindowMoves(int before, int window, int after)
+  {
+    int movesNumber = 0;
+    int runLength = before;
+    for (int bit = 0; bit < 3; bit++)
+    {
+      if ((window >>> bit & 1) != 0)
       {
-        for (int j = 0; j < height; j++)
-        {
-          rotatedLocalTiles[height - 1 - j][i] = localTiles[i][j];
-        }
+        runLength++;
+      }
+      else
+      {
+        movesNumber += runLength / 3;
+        runLength = 0;
       }
-      localTiles = rotatedLocalTiles;
     }
+    return movesNumber + (runLength + after) / 3;
+  }
 
-    for (int j = 0; j < localTiles[0].length; j++)
+  /**
+   * Recounts the real and safe moves totals of a compact board.
+   */
+  private void countCompactMovesNumbers()
+  {
+    long free = ~cells & fullMask;
+    long horizontalStarts = horizontalStarts(free);
+    long verticalStarts = verticalStarts(free);
+    realHorizontalMoves = countCompactMoves(horizontalStarts, 1);
+    realVerticalMoves = countCompactMoves(verticalStarts, width);
+    //Occupy all tiles where the opponent could move.
+    long horizontalFree = free & ~(verticalStarts | (verticalStarts << width)
+            | (verticalStarts << (2 * width)));
+    long verticalFree = free & ~(horizontalStarts | (horizontalStarts << 1)
+            | (horizontalStarts << 2));
+    safeHorizontalMoves = countCompactMoves(horizontalStarts(horizontalFree), 1);
+    safeVerticalMoves = countCompactMoves(verticalStarts(verticalFree), width);
+  }
+
+  /**
+   * Counts the maximum number of non-overlapping pieces of one player fitting
+   * on a compact board. Placing pieces greedily starting from the lowest tile
+   * index is optimal, since the lines of a player are independent of each
+   * other.
+   *
+   * @param starts Tiles on which a piece could be started.
+   * @param step Distance between the tiles of a piece.
+   * @return
+   */
+  private static int countCompactMoves(long starts, int step)
+  {
+    int movesNumber = 0;
+    while (starts != 0)
     {
-      widthloop:
-      for (int i = 0; i < localTiles.length; i++)
-      {
-        if (i + 2 >= localTiles.length)
-        {
-          continue;
-        }
+      long start = starts & -starts;
+      starts &= ~(start | (start << step) | (start << (2 * step)));
+      movesNumber++;
+    }
+    return movesNumber;
+  }
 
-        for (int offset = 2; offset >= 0; offset--)
-        {
-          if (localTiles[i + offset][j])
-          {
-            //Skip behind the occupied tile
-            i += offset;
-            continue widthloop;
-          }
-        }
-        safeMovesNumber++;
-        i += 2;
+  /**
+   * Counts the maximum number of non-overlapping pieces fitting on the free
+   * tiles of a single row or column, which is the sum of a third of every run
+   * of free tiles (rounded down). The line is processed a byte at a time with
+   * {@link #LINE_MOVES}, carrying the length of the current run modulo 3.
+   *
+   * @param free
+   * @return
+   */
+  private static int countLineMoves(long free)
+  {
+    int movesNumber = 0;
+    int runLength = 0;
+    while (free != 0)
+    {
+      int entry = LINE_MOVES[runLength << 8 | (int) (free & 0xFF)];
+      movesNumber += entry & 0xF;
+      runLength = entry >>> 4;
+      free >>>= 8;
+    }
+    return movesNumber;
+  }
+
+  /**
+   * Gets the tiles of a row (column) that could be occupied by a vertical
+   * (horizontal) piece of the opponent, i.e. that are part of three free tiles
+   * in consecutive rows (columns).
+   *
+   * @param lines Rows or columns of the board.
+   * @param index
+   * @param lineMask
+   * @return
+   */
+  private static long crossingCover(long[] lines, int index, long lineMask)
+  {
+    long cover = 0;
+    for (int k = Math.max(index - 2, 0); k <= index && k + 2 < lines.length;
+            k++)
+    {
+      cover |= ~(lines[k] | lines[k + 1] | lines[k + 2]);
+    }
+    return cover & lineMask;
+  }
+
+  /**
+   * Gets the tiles of a row (column) that could be occupied by a piece of the
+   * opponent as in {@link #crossingCover(long[], int, long)}, with some tiles
+   * of a range of rows (columns) occupied in addition.
+   *
+   * @param lines
+   * @param index
+   * @param lineMask
+   * @param occupiedFrom First line of the additionally occupied tiles.
+   * @param occupiedTo Last line of the additionally occupied tiles.
+   * @param occupied Additionally occupied tiles of these lines.
+   * @return
+   */
+  private static long crossingCover(long[] lines, int index, long lineMask,
+          int occupiedFrom, int occupiedTo, long occupied)
+  {
+    long cover = 0;
+    for (int k = Math.max(index - 2, 0); k <= index && k + 2 < lines.length;
+            k++)
+    {
+      long triple = lines[k] | lines[k + 1] | lines[k + 2];
+      if (k <= occupiedTo && k + 2 >= occupiedFrom)
+      {
+        triple |= occupied;
       }
+      cover |= ~triple;
     }
-    return safeMovesNumber;
+    return cover & lineMask;
+  }
+
+  /**
+   * Tiles of a compact board on which a horizontal piece could be started.
+   *
+   * @param free
+   * @return
+   */
+  private long horizontalStarts(long free)
+  {
+    return free & (free >>> 1) & (free >>> 2) & horizontalStartMask;
+  }
+
+  /**
+   * Tiles of a compact board on which a vertical piece could be started.
+   *
+   * @param free
+   * @return
+   */
+  private long verticalStarts(long free)
+  {
+    if (verticalStartMask == 0)
+    {
+      return 0;
+    }
+    return free & (free >>> width) & (free >>> (2 * width))
+            & verticalStartMask;
+  }
+
+  private void setTile(int x, int y, boolean occupied)
+  {
+    if (tileKeys != null)
+    {
+      //Occupying and freeing a tile both flip its key in or out of the hash
+      int index = y * width + x;
+      hashes[0] ^= tileKeys[0][index];
+      hashes[1] ^= tileKeys[1][index];
+      hashes[2] ^= tileKeys[2][index];
+      hashes[3] ^= tileKeys[3][index];
+    }
+    if (compact)
+    {
+      long bit = 1L << (y * width + x);
+      cells = occupied ? cells | bit : cells & ~bit;
+    }
+    if (occupied)
+    {
+      rows[y] |= 1L << x;
+      columns[x] |= 1L << y;
+    }
+    else
+    {
+      rows[y] &= ~(1L << x);
+      columns[x] &= ~(1L << y);
+    }
+  }
+
+  private static long lowBits(int count)
+  {
+    return count >= 64 ? -1L : (1L << count) - 1;
   }
 
   /**
@@ -273,18 +990,160 @@ public class GameState
   public void toggleVerticalsTurn()
   {
     verticalsTurn = !verticalsTurn;
+    hashes[0] ^= sideToMoveKey;
+    hashes[1] ^= sideToMoveKey;
+    hashes[2] ^= sideToMoveKey;
+    hashes[3] ^= sideToMoveKey;
   }
 
+  /**
+   * Gets the moves made so far by both players.
+   *
+   * @return
+   */
   public List<Piece> getMoveHistory()
   {
-    return moveHistory;
+    List<Piece> pieces = new ArrayList<>(moveHistorySize);
+    for (int i = 0; i < moveHistorySize; i++)
+    {
+      pieces.add(toPiece(moveHistory[i]));
+    }
+    return pieces;
+  }
+
+  /**
+   * Gets the Zobrist hash of the board. Requires Zobrist keys to be set.
+   *
+   * @return
+   */
+  public long getHash()
+  {
+    return hashes[0];
   }
 
+  /**
+   * Gets the Zobrist hash of the board or one of its flipped versions.
+   * Requires Zobrist keys to be set.
+   *
+   * @param horizontallyFlipped
+   * @param verticallyFlipped
+   * @return
+   */
+  public long getHash(boolean horizontallyFlipped, boolean verticallyFlipped)
+  {
+    return hashes[(horizontallyFlipped ? 1 : 0) | (verticallyFlipped ? 2 : 0)];
+  }
+
+  /**
+   * Gets the smallest hash of the board and its flipped versions. All of them
+   * have the same canonical hash, so a single transposition table entry covers
+   * the board along with its symmetric positions. Requires Zobrist keys to be
+   * set.
+   *
+   * @return
+   */
+  public long getCanonicalHash()
+  {
+    return Math.min(Math.min(hashes[0], hashes[1]),
+            Math.min(hashes[2], hashes[3]));
+  }
+
+  /**
+   * Gets the canonical hash of the position after a move, with the other
+   * player to move, without making the move. Requires Zobrist keys to be set.
+   *
+   * @param move
+   * @return
+   */
+  public long getCanonicalHashAfter(int move)
+  {
+    int index = move >>> 1;
+    int step = (move & 1) != 0 ? width : 1;
+    long canonicalHash = Long.MAX_VALUE;
+    for (int variant = 0; variant < 4; variant++)
+    {
+      long[] keys = tileKeys[variant];
+      long hash = hashes[variant] ^ sideToMoveKey ^ keys[index]
+              ^ keys[index + step] ^ keys[index + 2 * step];
+      canonicalHash = Math.min(canonicalHash, hash);
+    }
+    return canonicalHash;
+  }
+
+  public boolean isOccupied(int x, int y)
+  {
+    return (rows[y] >>> x & 1) != 0;
+  }
+
+  /**
+   * Creates a snapshot of the board. Changes to the returned array are not
+   * reflected in this game state.
+   *
+   * @return
+   */
   public boolean[][] getBoard()
   {
+    boolean[][] board = new boolean[width][height];
+    for (int i = 0; i < width; i++)
+    {
+      for (int j = 0; j < height; j++)
+      {
+        board[i][j] = isOccupied(i, j);
+      }
+    }
     return board;
   }
 
+  /**
+   * Gets the free tiles of every row (bit <code>x</code> of element
+   * <code>y</code>).
+   *
+   * @return
+   */
+  public long[] getFreeRows()
+  {
+    long[] free = new long[height];
+    for (int j = 0; j < height; j++)
+    {
+      free[j] = ~rows[j] & rowMask;
+    }
+    return free;
+  }
+
+  /**
+   * Checks whether the free tiles fall apart into more than one independent
+   * region (see {@link RegionSolver}), without allocating once the working
+   * space exists. Only then the regions need to be found.
+   *
+   * @return
+   */
+  public boolean hasSeveralRegions()
+  {
+    if (regionBuffer == null)
+    {
+      regionBuffer = new long[RegionSolver.BUFFER_ROWS * height];
+    }
+    for (int j = 0; j < height; j++)
+    {
+      regionBuffer[j] = ~rows[j] & rowMask;
+    }
+    return RegionSolver.hasSeveralRegions(regionBuffer, height);
+  }
+
+  public int getFreeTilesNumber()
+  {
+    if (compact)
+    {
+      return Long.bitCount(~cells & fullMask);
+    }
+    int freeTiles = 0;
+    for (int j = 0; j < height; j++)
+    {
+      freeTiles += Long.bitCount(~rows[j] & rowMask);
+    }
+    return freeTiles;
+  }
+
   public int getWidth()
   {
     return width;
@@ -0,0 +1,179 @@
+package cgtsolver;
+
+import java.util.Arrays;
+
+/**
+ * Transposition table storing nothing but the outcome of positions, for the
+ * binary search of {@link AbSolver}. Every entry is a single
+ * <code>long</code>: the upper 62 bits of the Zobrist hash of the position and
+ * two bits of outcome (empty, win or loss for the player to move), so the
+ * table holds twice as many positions as a {@link ZobristTranspositionTable}
+ * of the same size.
+ * <p>
+ * Every hash maps to a bucket of four entries, half a cache line. There is no
+ * room for the search effort, so a position replaces an empty entry of its
+ * bucket or else one picked by the upper bits of its hash.
+ * <p>
+ * The table may be shared by several search threads without locking: an entry
+ * is written as a whole, and the statistics are only approximate then.
+ *
+ * @author daniel
+ */
+public class OutcomeTable
+{
+  /**
+   * Outcomes of a position as returned by {@link #getOutcome(long)}.
+   */
+  public static final int UNKNOWN = 0;
+  public static final int LOSS = 1;
+  public static final int WIN = 2;
+
+  private static final int ENTRIES_PER_BUCKET = 4;
+  private static final long OUTCOME_MASK = 3;
+
+  private final long[] entries;
+
+  /**
+   * Selects a bucket from the lower bits of a hash.
+   */
+  private final int bucketMask;
+
+  private long probes;
+  private long hits;
+  private long stores;
+  private long overwrites;
+
+  /**
+   * Creates a table using at most the given amount of memory. The number of
+   * buckets is rounded down to a power of two.
+   *
+   * @param sizeMb
+   */
+  public OutcomeTable(int sizeMb)
+  {
+    if (sizeMb <= 0)
+    {
+      throw new IllegalArgumentException(
+              "Outcome table size must be positive, was " + sizeMb);
+    }
+    long bucketCount = Long.highestOneBit(
+            ((long) sizeMb << 20) / (ENTRIES_PER_BUCKET * Long.BYTES));
+    //Stay within the maximum array length
+    bucketCount = Math.min(Math.max(bucketCount, 1), 1L << 28);
+    entries = new long[(int) bucketCount * ENTRIES_PER_BUCKET];
+    bucketMask = (int) bucketCount - 1;
+  }
+
+  /**
+   * Clear all data and statistics from the table.
+   */
+  public void clear()
+  {
+    Arrays.fill(entries, 0);
+    resetStatistics();
+  }
+
+  /**
+   * Clear the statistics, but keep the stored positions.
+   */
+  public void resetStatistics()
+  {
+    probes = 0;
+    hits = 0;
+    stores = 0;
+    overwrites = 0;
+  }
+
+  /**
+   * Looks up the outcome of a position.
+   *
+   * @param hash
+   * @return {@link #WIN}, {@link #LOSS} or {@link #UNKNOWN}.
+   */
+  public int getOutcome(long hash)
+  {
+    probes++;
+    long key = hash & ~OUTCOME_MASK;
+    int bucket = bucketIndex(hash);
+    for (int entry = bucket; entry < bucket + ENTRIES_PER_BUCKET; entry++)
+    {
+      long word = entries[entry];
+      if ((word & ~OUTCOME_MASK) == key && (word & OUTCOME_MASK) != UNKNOWN)
+      {
+        hits++;
+        return (int) (word & OUTCOME_MASK);
+      }
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * Stores the outcome of a position.
+   *
+   * @param hash
+   * @param win Whether the player to move wins.
+   */
+  public void setOutcome(long hash, boolean win)
+  {
+    stores++;
+    long key = hash & ~OUTCOME_MASK;
+    long word = key | (win ? WIN : LOSS);
+    int bucket = bucketIndex(hash);
+    int free = -1;
+    for (int entry = bucket; entry < bucket + ENTRIES_PER_BUCKET; entry++)
+    {
+      long stored = entries[entry];
+      if ((stored & ~OUTCOME_MASK) == key || (stored & OUTCOME_MASK) == UNKNOWN)
+      {
+        free = entry;
+        break;
+      }
+    }
+    if (free < 0)
+    {
+      overwrites++;
+      free = bucket + (int) (hash >>> 62);
+    }
+    entries[free] = word;
+  }
+
+  private int bucketIndex(long hash)
+  {
+    return ((int) hash & bucketMask) * ENTRIES_PER_BUCKET;
+  }
+
+  public long getProbes()
+  {
+    return probes;
+  }
+
+  public long getHits()
+  {
+    return hits;
+  }
+
+  public long getStores()
+  {
+    return stores;
+  }
+
+  /**
+   * Gets the number of stores that evicted a different position.
+   *
+   * @return
+   */
+  public long getOverwrites()
+  {
+    return overwrites;
+  }
+
+  /**
+   * Gets the number of positions the table can hold.
+   *
+   * @return
+   */
+  public int getCapacity()
+  {
+    return entries.length;
+  }
+}
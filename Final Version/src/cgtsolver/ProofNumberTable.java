@@ -0,0 +1,171 @@
+package cgtsolver;
+
+import java.util.Arrays;
+
+/**
+ * Transposition table for proof-number search. Stores the proof and disproof
+ * number of positions, identified by their Zobrist hash, in fixed size arrays.
+ * Every hash maps to a bucket of two entries; a new position replaces the
+ * entry that took less work to compute.
+ *
+ * @author daniel
+ */
+public class ProofNumberTable
+{
+  private static final int ENTRIES_PER_BUCKET = 2;
+
+  /**
+   * Bytes used per entry: hash, proof number, disproof number and work.
+   */
+  private static final int ENTRY_BYTES = Long.BYTES + 3 * Integer.BYTES;
+
+  private long[] hashes;
+  private int[] proofNumbers;
+  private int[] disproofNumbers;
+  private int[] works;
+
+  /**
+   * Selects a bucket from the lower bits of a hash.
+   */
+  private int bucketMask;
+
+  private long probes;
+  private long hits;
+  private long stores;
+
+  /**
+   * Creates a table using at most the given amount of memory. The number of
+   * buckets is rounded down to a power of two.
+   *
+   * @param sizeMb
+   */
+  public ProofNumberTable(int sizeMb)
+  {
+    if (sizeMb <= 0)
+    {
+      throw new IllegalArgumentException(
+              "Proof number table size must be positive, was " + sizeMb);
+    }
+    long bucketCount = Long.highestOneBit(
+            ((long) sizeMb << 20) / (ENTRIES_PER_BUCKET * ENTRY_BYTES));
+    //Stay within the maximum array length
+    bucketCount = Math.min(bucketCount, 1L << 29);
+    int entryCount = (int) bucketCount * ENTRIES_PER_BUCKET;
+    hashes = new long[entryCount];
+    proofNumbers = new int[entryCount];
+    disproofNumbers = new int[entryCount];
+    works = new int[entryCount];
+    bucketMask = (int) bucketCount - 1;
+  }
+
+  /**
+   * Clear all data and statistics from the table.
+   */
+  public void clear()
+  {
+    //Proof and disproof number are never both zero, which marks empty entries
+    Arrays.fill(proofNumbers, 0);
+    Arrays.fill(disproofNumbers, 0);
+    resetStatistics();
+  }
+
+  /**
+   * Clear the statistics, but keep the stored positions.
+   */
+  public void resetStatistics()
+  {
+    probes = 0;
+    hits = 0;
+    stores = 0;
+  }
+
+  /**
+   * Looks up a position.
+   *
+   * @param hash
+   * @return The entry index to read the numbers from, or -1 if the position is
+   * not stored.
+   */
+  public int find(long hash)
+  {
+    probes++;
+    int bucket = bucketIndex(hash);
+    for (int entry = bucket; entry < bucket + ENTRIES_PER_BUCKET; entry++)
+    {
+      if (hashes[entry] == hash && !isEmpty(entry))
+      {
+        hits++;
+        return entry;
+      }
+    }
+    return -1;
+  }
+
+  public int getProofNumber(int entry)
+  {
+    return proofNumbers[entry];
+  }
+
+  public int getDisproofNumber(int entry)
+  {
+    return disproofNumbers[entry];
+  }
+
+  /**
+   * Stores the proof and disproof number of a position. The entry of the
+   * bucket holding the same position, an empty one or the one that took less
+   * work is used.
+   *
+   * @param hash
+   * @param proofNumber
+   * @param disproofNumber
+   * @param work Number of nodes searched to compute the numbers.
+   */
+  public void store(long hash, int proofNumber, int disproofNumber, long work)
+  {
+    stores++;
+    int bucket = bucketIndex(hash);
+    int target = bucket;
+    for (int entry = bucket; entry < bucket + ENTRIES_PER_BUCKET; entry++)
+    {
+      if (hashes[entry] == hash || isEmpty(entry))
+      {
+        target = entry;
+        break;
+      }
+      if (works[entry] < works[target])
+      {
+        target = entry;
+      }
+    }
+    hashes[target] = hash;
+    proofNumbers[target] = proofNumber;
+    disproofNumbers[target] = disproofNumber;
+    works[target] = (int) Math.min(work, Integer.MAX_VALUE);
+  }
+
+  private boolean isEmpty(int entry)
+  {
+    return proofNumbers[entry] == 0 && disproofNumbers[entry] == 0;
+  }
+
+  private int bucketIndex(long hash)
+  {
+    return ((int) hash & bucketMask) * ENTRIES_PER_BUCKET;
+  }
+
+  public long getProbes()
+  {
+    return probes;
+  }
+
+  public long getHits()
+  {
+    return hits;
+  }
+
+  public long getStores()
+  {
+    return stores;
+  }
+}
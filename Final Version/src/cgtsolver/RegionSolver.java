@@ -0,0 +1,424 @@
+package cgtsolver;
+
+import cgsuite.CanonicalGame;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Solves positions that fall apart into independent regions. Two free tiles
+ * belong to the same region if a piece of either player could cover both,
+ * directly or through other pieces; tiles no piece fits on belong to no region
+ * at all. A move only changes its own region, so a position is the sum of its
+ * regions in the sense of combinatorial game theory, with the vertical player
+ * as Left.
+ * <p>
+ * The canonical value of every region is computed from the values of its
+ * options and cached by the shape of the region, regardless of where it lies
+ * on the board and of mirroring. Whoever wins the sum of the values when
+ * moving first wins the position, so the moves of the regions never need to be
+ * interleaved.
+ *
+ * @author daniel
+ */
+public class RegionSolver
+{
+  /**
+   * Default number of entries of the value cache.
+   */
+  public static final int DEFAULT_CACHE_ENTRIES = 1 << 20;
+
+  /**
+   * Rows of working space needed per board row by
+   * {@link #hasSeveralRegions(long[], int)}, including the free tiles.
+   */
+  public static final int BUFFER_ROWS = 5;
+
+  /**
+   * Canonical values of the regions computed so far, by normalized shape.
+   * Direct mapped: a region replaces whatever region was cached in its slot
+   * before, so the cache never grows beyond its fixed size. The entries are
+   * immutable, so all threads of a search use the cache without locking.
+   */
+  private final AtomicReferenceArray<Region> values;
+
+  /**
+   * Selects a slot from the lower bits of a mixed region hash code.
+   */
+  private final int slotMask;
+
+  private final AtomicInteger cachedValues = new AtomicInteger();
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder hits = new LongAdder();
+
+  public RegionSolver()
+  {
+    this(DEFAULT_CACHE_ENTRIES);
+  }
+
+  /**
+   * Creates a solver caching the values of at most the given number of
+   * regions, rounded down to a power of two.
+   *
+   * @param cacheEntries
+   */
+  public RegionSolver(int cacheEntries)
+  {
+    if (cacheEntries <= 0)
+    {
+      throw new IllegalArgumentException(
+              "Region cache size must be positive, was " + cacheEntries);
+    }
+    int slots = Integer.highestOneBit(cacheEntries);
+    values = new AtomicReferenceArray<>(slots);
+    slotMask = slots - 1;
+  }
+
+  /**
+   * Splits the free tiles of a board into independent regions.
+   *
+   * @param free Free tiles per row (bit <code>x</code> of
+   * <code>free[y]</code>).
+   * @return The free tiles of every region, per row.
+   */
+  public static List<long[]> findRegions(long[] free)
+  {
+    int height = free.length;
+    long[] buffer = new long[(BUFFER_ROWS - 1) * height];
+    System.arraycopy(free, 0, buffer, 0, height);
+    findStarts(buffer, height);
+
+    List<long[]> regions = new ArrayList<>();
+    for (int seedRow = 0; seedRow < height; seedRow++)
+    {
+      while (buffer[3 * height + seedRow] != 0)
+      {
+        long[] region = new long[height];
+        growRegion(buffer, height, seedRow, region, 0);
+        regions.add(region);
+      }
+    }
+    return regions;
+  }
+
+  /**
+   * Checks whether the free tiles of a board fall apart into more than one
+   * region, without allocating. Only then
+   * {@link #findRegions(long[])} needs to be called.
+   *
+   * @param buffer Free tiles per row in the first <code>height</code>
+   * elements, followed by working space; at least {@link #BUFFER_ROWS} times
+   * <code>height</code> long. The free tiles are kept.
+   * @param height Number of rows.
+   * @return
+   */
+  public static boolean hasSeveralRegions(long[] buffer, int height)
+  {
+    findStarts(buffer, height);
+    int remaining = 3 * height;
+    int seedRow = 0;
+    while (seedRow < height && buffer[remaining + seedRow] == 0)
+    {
+      seedRow++;
+    }
+    if (seedRow == height)
+    {
+      return false;
+    }
+    Arrays.fill(buffer, 4 * height, 5 * height, 0);
+    growRegion(buffer, height, seedRow, buffer, 4 * height);
+    for (int j = seedRow; j < height; j++)
+    {
+      if (buffer[remaining + j] != 0)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds the tiles on which pieces may start. The buffer holds four blocks
+   * of <code>height</code> rows: the free tiles, which are read, and the
+   * starts of horizontal pieces, the starts of vertical pieces and the tiles
+   * covered by any piece, which are written.
+   *
+   * @param buffer
+   * @param height
+   */
+  private static void findStarts(long[] buffer, int height)
+  {
+    int horizontalStarts = height;
+    int verticalStarts = 2 * height;
+    int remaining = 3 * height;
+    Arrays.fill(buffer, height, 4 * height, 0);
+    for (int j = 0; j < height; j++)
+    {
+      long free = buffer[j];
+      long starts = free & (free >>> 1) & (free >>> 2);
+      buffer[horizontalStarts + j] = starts;
+      buffer[remaining + j] |= starts | (starts << 1) | (starts << 2);
+      if (j + 2 < height)
+      {
+        starts = free & buffer[j + 1] & buffer[j + 2];
+        buffer[verticalStarts + j] = starts;
+        buffer[remaining + j] |= starts;
+        buffer[remaining + j + 1] |= starts;
+        buffer[remaining + j + 2] |= starts;
+      }
+    }
+  }
+
+  /**
+   * Grows a region from the first remaining tile of a row until no piece
+   * touching it is left out, and removes its tiles from the remaining ones.
+   *
+   * @param buffer Laid out as by {@link #findStarts(long[], int)}.
+   * @param height
+   * @param seedRow
+   * @param region Receives the tiles of the region per row, must be empty.
+   * @param offset Index of the first row in <code>region</code>.
+   */
+  private static void growRegion(long[] buffer, int height, int seedRow,
+          long[] region, int offset)
+  {
+    int horizontalStarts = height;
+    int verticalStarts = 2 * height;
+    int remaining = 3 * height;
+    long seedTiles = buffer[remaining + seedRow];
+    region[offset + seedRow] = seedTiles & -seedTiles;
+    //Add all pieces touching the region until it does not grow anymore
+    boolean grown = true;
+    while (grown)
+    {
+      grown = false;
+      for (int j = 0; j < height; j++)
+      {
+        long rowTiles = region[offset + j];
+        long starts = buffer[horizontalStarts + j]
+                & (rowTiles | (rowTiles >>> 1) | (rowTiles >>> 2));
+        long tiles = rowTiles | starts | (starts << 1) | (starts << 2);
+        if (tiles != rowTiles)
+        {
+          region[offset + j] = tiles;
+          grown = true;
+        }
+      }
+      for (int j = 0; j + 2 < height; j++)
+      {
+        long starts = buffer[verticalStarts + j] & (region[offset + j]
+                | region[offset + j + 1] | region[offset + j + 2]);
+        if ((starts & ~(region[offset + j] & region[offset + j + 1]
+                & region[offset + j + 2])) != 0)
+        {
+          region[offset + j] |= starts;
+          region[offset + j + 1] |= starts;
+          region[offset + j + 2] |= starts;
+          grown = true;
+        }
+      }
+    }
+    for (int j = 0; j < height; j++)
+    {
+      buffer[remaining + j] &= ~region[offset + j];
+    }
+  }
+
+  /**
+   * Decides whether the player to move wins the sum of some regions.
+   *
+   * @param regions
+   * @param verticalsTurn
+   * @return
+   */
+  public boolean isWin(List<long[]> regions,
+          boolean verticalsTurn)
+  {
+    CanonicalGame value = getSumValue(regions);
+    //Left wins moving first unless the value is at most zero, Right unless
+    //it is at least zero
+    return verticalsTurn ? !value.leq(CanonicalGame.ZERO)
+            : !CanonicalGame.ZERO.leq(value);
+  }
+
+  /**
+   * Gets the canonical value of the sum of some regions. Several threads may
+   * call this at once: the sums are memoized in the primary cache of the
+   * active {@link cgsuite.Context}, which is thread-safe for the default
+   * context and for {@link cgsuite.BoundedContext}, and any other context
+   * installed for a parallel search must be thread-safe too.
+   *
+   * @param regions
+   * @return
+   */
+  public CanonicalGame getSumValue(List<long[]> regions)
+  {
+    CanonicalGame sum = CanonicalGame.ZERO;
+    for (long[] region : regions)
+    {
+      sum = sum.plus(getValue(region));
+    }
+    return sum;
+  }
+
+  /**
+   * Gets the canonical value of a single region.
+   *
+   * @param region Free tiles of the region per row.
+   * @return
+   */
+  public CanonicalGame getValue(long[] region)
+  {
+    lookups.increment();
+    long[] rows = normalize(region);
+    int hashCode = Arrays.hashCode(rows);
+    int mixed = hashCode * 0x9E3779B9;
+    int slot = (mixed ^ (mixed >>> 16)) & slotMask;
+    Region cached = values.get(slot);
+    if (cached != null && cached.hashCode == hashCode
+            && Arrays.equals(cached.rows, rows))
+    {
+      hits.increment();
+      return cached.value;
+    }
+    //Other threads may compute the same value meanwhile, which is wasted but
+    //harmless work
+    CanonicalGame value = computeValue(rows);
+    if (values.getAndSet(slot, new Region(rows, hashCode, value)) == null)
+    {
+      cachedValues.incrementAndGet();
+    }
+    return value;
+  }
+
+  /**
+   * Computes the canonical value of a region from the values of its options.
+   * The tiles left after a move may fall apart into several regions again.
+   *
+   * @param region
+   * @return
+   */
+  private CanonicalGame computeValue(long[] region)
+  {
+    List<CanonicalGame> leftOptions = new ArrayList<>();
+    List<CanonicalGame> rightOptions = new ArrayList<>();
+    for (int j = 0; j < region.length; j++)
+    {
+      long starts = j + 2 < region.length
+              ? region[j] & region[j + 1] & region[j + 2] : 0;
+      while (starts != 0)
+      {
+        long start = starts & -starts;
+        starts &= starts - 1;
+        long[] option = region.clone();
+        option[j] &= ~start;
+        option[j + 1] &= ~start;
+        option[j + 2] &= ~start;
+        leftOptions.add(getSumValue(findRegions(option)));
+      }
+
+      starts = region[j] & (region[j] >>> 1) & (region[j] >>> 2);
+      while (starts != 0)
+      {
+        long start = starts & -starts;
+        starts &= starts - 1;
+        long[] option = region.clone();
+        option[j] &= ~(start | (start << 1) | (start << 2));
+        rightOptions.add(getSumValue(findRegions(option)));
+      }
+    }
+    return CanonicalGame.fromOptions(leftOptions, rightOptions);
+  }
+
+  /**
+   * Moves a region to the top left corner, dropping empty rows and columns,
+   * and picks the smallest of its mirrored versions, which all have the same
+   * value.
+   *
+   * @param region
+   * @return
+   */
+  private static long[] normalize(long[] region)
+  {
+    int top = 0;
+    while (region[top] == 0)
+    {
+      top++;
+    }
+    int bottom = region.length - 1;
+    while (region[bottom] == 0)
+    {
+      bottom--;
+    }
+    long columns = 0;
+    for (int j = top; j <= bottom; j++)
+    {
+      columns |= region[j];
+    }
+    int shift = Long.numberOfTrailingZeros(columns);
+    int width = 64 - Long.numberOfLeadingZeros(columns) - shift;
+
+    long[] normalized = new long[bottom - top + 1];
+    long[] verticallyFlipped = new long[normalized.length];
+    long[] horizontallyFlipped = new long[normalized.length];
+    long[] bothFlipped = new long[normalized.length];
+    for (int j = 0; j < normalized.length; j++)
+    {
+      long row = region[top + j] >>> shift;
+      long mirroredRow = Long.reverse(row) >>> (64 - width);
+      normalized[j] = row;
+      verticallyFlipped[normalized.length - 1 - j] = row;
+      horizontallyFlipped[j] = mirroredRow;
+      bothFlipped[normalized.length - 1 - j] = mirroredRow;
+    }
+    return smaller(smaller(normalized, verticallyFlipped),
+            smaller(horizontallyFlipped, bothFlipped));
+  }
+
+  private static long[] smaller(long[] a, long[] b)
+  {
+    for (int j = 0; j < a.length; j++)
+    {
+      if (a[j] != b[j])
+      {
+        return a[j] < b[j] ? a : b;
+      }
+    }
+    return a;
+  }
+
+  public long getLookups()
+  {
+    return lookups.sum();
+  }
+
+  public long getHits()
+  {
+    return hits.sum();
+  }
+
+  public int getCachedValues()
+  {
+    return cachedValues.get();
+  }
+
+  /**
+   * Normalized shape of a region and its value, an entry of the value cache.
+   */
+  private static final class Region
+  {
+    private final long[] rows;
+    private final int hashCode;
+    private final CanonicalGame value;
+
+    Region(long[] rows, int hashCode, CanonicalGame value)
+    {
+      this.rows = rows;
+      this.hashCode = hashCode;
+      this.value = value;
+    }
+  }
+}
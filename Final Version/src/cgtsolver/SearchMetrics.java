@@ -0,0 +1,458 @@
+package cgtsolver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Counters of a single search of {@link AbSolver}: nodes per depth, cutoffs
+ * by the index of the move causing them, positions decided by the abort
+ * criteria, transposition table statistics, nodes per second and the bytes
+ * allocated by the searching threads.
+ * <p>
+ * The counters are updated by the searching thread without synchronization.
+ * Every few thousand nodes the thread publishes them, so
+ * {@link #snapshot()} may be called from any other thread to monitor a
+ * running search; the snapshot is at most one publishing interval behind.
+ * The worker solvers of a parallel search count into metrics of their own,
+ * which are included in snapshots and added up when the search finishes.
+ *
+ * @author daniel
+ */
+public class SearchMetrics
+{
+  private static final ThreadMXBean THREADS
+          = ManagementFactory.getThreadMXBean();
+
+  private long nodes;
+  private long[] nodesPerDepth = new long[32];
+  private long[] cutoffsByMoveIndex = new long[32];
+  private long abortWins;
+  private long abortLosses;
+  private long terminalPositions;
+  private long regionSolves;
+  private long etcPositions;
+  private long etcProbes;
+  private long etcCutoffs;
+  private long transpositionTableProbes;
+  private long transpositionTableHits;
+  private long transpositionTableStores;
+  private long transpositionTableOverwrites;
+  private long allocatedBytes = -1;
+  private long startNanos;
+  private long durationNanos = -1;
+
+  /**
+   * Thread whose allocated bytes are counted, and their number when they were
+   * counted last.
+   */
+  private long allocationThreadId = -1;
+  private long allocationMark;
+
+  /**
+   * Written last when publishing, read first when taking a snapshot, so the
+   * snapshot sees all counters as published.
+   */
+  private volatile boolean published;
+
+  private final List<SearchMetrics> workers = new CopyOnWriteArrayList<>();
+
+  /**
+   * Starts counting a search on the current thread.
+   */
+  void start()
+  {
+    startNanos = System.nanoTime();
+    allocationThreadId = -1;
+    publish();
+  }
+
+  void countNode(int depth)
+  {
+    if (depth >= nodesPerDepth.length)
+    {
+      nodesPerDepth = Arrays.copyOf(nodesPerDepth,
+              Math.max(depth + 1, 2 * nodesPerDepth.length));
+    }
+    nodesPerDepth[depth]++;
+  }
+
+  void countCutoff(int moveIndex)
+  {
+    if (moveIndex >= cutoffsByMoveIndex.length)
+    {
+      cutoffsByMoveIndex = Arrays.copyOf(cutoffsByMoveIndex,
+              Math.max(moveIndex + 1, 2 * cutoffsByMoveIndex.length));
+    }
+    cutoffsByMoveIndex[moveIndex]++;
+  }
+
+  /**
+   * Counts a position won because the safe moves of the player to move
+   * exceed the real moves of the opponent.
+   */
+  void countAbortWin()
+  {
+    abortWins++;
+  }
+
+  /**
+   * Counts a position lost because the real moves of the player to move fall
+   * short of the safe moves of the opponent.
+   */
+  void countAbortLoss()
+  {
+    abortLosses++;
+  }
+
+  /**
+   * Counts a position without moves for the player to move.
+   */
+  void countTerminalPosition()
+  {
+    terminalPositions++;
+  }
+
+  /**
+   * Counts a position solved as a sum of independent regions.
+   */
+  void countRegionSolve()
+  {
+    regionSolves++;
+  }
+
+  void countEtcPosition()
+  {
+    etcPositions++;
+  }
+
+  void countEtcProbe()
+  {
+    etcProbes++;
+  }
+
+  void countEtcCutoff()
+  {
+    etcCutoffs++;
+  }
+
+  void setTranspositionTableStatistics(long probes, long hits, long stores,
+          long overwrites)
+  {
+    transpositionTableProbes = probes;
+    transpositionTableHits = hits;
+    transpositionTableStores = stores;
+    transpositionTableOverwrites = overwrites;
+  }
+
+  /**
+   * Includes the metrics of a worker solver in snapshots and, once the search
+   * finishes, in these metrics.
+   *
+   * @param worker
+   */
+  void addWorker(SearchMetrics worker)
+  {
+    workers.add(worker);
+  }
+
+  /**
+   * Makes the counters visible to snapshots taken by other threads. Must be
+   * called by the searching thread.
+   *
+   * @param nodes Number of nodes searched so far.
+   */
+  void publish(long nodes)
+  {
+    this.nodes = nodes;
+    publish();
+  }
+
+  private void publish()
+  {
+    long bytes = currentThreadAllocatedBytes();
+    long threadId = Thread.currentThread().getId();
+    if (bytes >= 0)
+    {
+      if (threadId == allocationThreadId)
+      {
+        allocatedBytes += bytes - allocationMark;
+      }
+      else if (allocatedBytes < 0)
+      {
+        allocatedBytes = 0;
+      }
+      allocationThreadId = threadId;
+      allocationMark = bytes;
+    }
+    published = true;
+  }
+
+  /**
+   * Ends the search: adds the counters of the workers and stops the clock.
+   *
+   * @param nodes Number of nodes searched in total.
+   */
+  void finish(long nodes)
+  {
+    for (SearchMetrics worker : workers)
+    {
+      add(worker);
+    }
+    workers.clear();
+    durationNanos = System.nanoTime() - startNanos;
+    publish(nodes);
+  }
+
+  /**
+   * Adds the counters of other metrics, except nodes and transposition table
+   * statistics, which are counted by the solver and its table.
+   *
+   * @param other
+   */
+  private void add(SearchMetrics other)
+  {
+    nodesPerDepth = add(nodesPerDepth, other.nodesPerDepth);
+    cutoffsByMoveIndex = add(cutoffsByMoveIndex, other.cutoffsByMoveIndex);
+    abortWins += other.abortWins;
+    abortLosses += other.abortLosses;
+    terminalPositions += other.terminalPositions;
+    regionSolves += other.regionSolves;
+    etcPositions += other.etcPositions;
+    etcProbes += other.etcProbes;
+    etcCutoffs += other.etcCutoffs;
+    if (other.allocatedBytes > 0)
+    {
+      allocatedBytes = Math.max(allocatedBytes, 0) + other.allocatedBytes;
+    }
+  }
+
+  private static long[] add(long[] counters, long[] otherCounters)
+  {
+    long[] sum = Arrays.copyOf(counters,
+            Math.max(counters.length, otherCounters.length));
+    for (int i = 0; i < otherCounters.length; i++)
+    {
+      sum[i] += otherCounters[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Takes a copy of the counters as last published, including those of the
+   * workers of a running parallel search. May be called from any thread.
+   *
+   * @return
+   */
+  public SearchMetrics snapshot()
+  {
+    boolean visible = published;
+    SearchMetrics snapshot = new SearchMetrics();
+    snapshot.nodes = nodes;
+    snapshot.nodesPerDepth = nodesPerDepth.clone();
+    snapshot.cutoffsByMoveIndex = cutoffsByMoveIndex.clone();
+    snapshot.abortWins = abortWins;
+    snapshot.abortLosses = abortLosses;
+    snapshot.terminalPositions = terminalPositions;
+    snapshot.regionSolves = regionSolves;
+    snapshot.etcPositions = etcPositions;
+    snapshot.etcProbes = etcProbes;
+    snapshot.etcCutoffs = etcCutoffs;
+    snapshot.transpositionTableProbes = transpositionTableProbes;
+    snapshot.transpositionTableHits = transpositionTableHits;
+    snapshot.transpositionTableStores = transpositionTableStores;
+    snapshot.transpositionTableOverwrites = transpositionTableOverwrites;
+    snapshot.allocatedBytes = allocatedBytes;
+    snapshot.startNanos = startNanos;
+    snapshot.durationNanos = durationNanos;
+    snapshot.published = visible;
+    for (SearchMetrics worker : workers)
+    {
+      SearchMetrics workerSnapshot = worker.snapshot();
+      snapshot.add(workerSnapshot);
+      snapshot.nodes += workerSnapshot.nodes;
+    }
+    return snapshot;
+  }
+
+  /**
+   * Gets the number of bytes allocated by the current thread so far, or -1 if
+   * the JVM does not tell.
+   *
+   * @return
+   */
+  private static long currentThreadAllocatedBytes()
+  {
+    if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+    {
+      return -1;
+    }
+    return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+  }
+
+  public long getNodes()
+  {
+    return nodes;
+  }
+
+  /**
+   * Gets the number of nodes searched at every depth, the roots being at
+   * depth 0.
+   *
+   * @return
+   */
+  public long[] getNodesPerDepth()
+  {
+    return trim(nodesPerDepth);
+  }
+
+  /**
+   * Gets how often the first, second, ... move searched at a position caused
+   * a cutoff, i.e. won the position.
+   *
+   * @return
+   */
+  public long[] getCutoffsByMoveIndex()
+  {
+    return trim(cutoffsByMoveIndex);
+  }
+
+  private static long[] trim(long[] counters)
+  {
+    int length = counters.length;
+    while (length > 0 && counters[length - 1] == 0)
+    {
+      length--;
+    }
+    return Arrays.copyOf(counters, length);
+  }
+
+  public long getAbortWins()
+  {
+    return abortWins;
+  }
+
+  public long getAbortLosses()
+  {
+    return abortLosses;
+  }
+
+  public long getTerminalPositions()
+  {
+    return terminalPositions;
+  }
+
+  public long getRegionSolves()
+  {
+    return regionSolves;
+  }
+
+  public long getEtcPositions()
+  {
+    return etcPositions;
+  }
+
+  public long getEtcProbes()
+  {
+    return etcProbes;
+  }
+
+  public long getEtcCutoffs()
+  {
+    return etcCutoffs;
+  }
+
+  public long getTranspositionTableProbes()
+  {
+    return transpositionTableProbes;
+  }
+
+  public long getTranspositionTableHits()
+  {
+    return transpositionTableHits;
+  }
+
+  public long getTranspositionTableStores()
+  {
+    return transpositionTableStores;
+  }
+
+  public long getTranspositionTableOverwrites()
+  {
+    return transpositionTableOverwrites;
+  }
+
+  /**
+   * Gets the number of bytes allocated by the searching threads, or -1 if the
+   * JVM does not tell.
+   *
+   * @return
+   */
+  public long getAllocatedBytes()
+  {
+    return allocatedBytes;
+  }
+
+  public boolean isFinished()
+  {
+    return durationNanos >= 0;
+  }
+
+  /**
+   * Gets the duration of the search, so far if it is still running.
+   *
+   * @return
+   */
+  public long getElapsedNanos()
+  {
+    return isFinished() ? durationNanos : System.nanoTime() - startNanos;
+  }
+
+  public double getNodesPerSecond()
+  {
+    return nodes * 1e9 / Math.max(1, getElapsedNanos());
+  }
+
+  /**
+   * Describes the counters in a few lines, as printed after a search.
+   *
+   * @return
+   */
+  @Override
+  public String toString()
+  {
+    StringBuilder description = new StringBuilder();
+    description.append(String.format("Nodes per second: %.0f, allocated: %s%n",
+            getNodesPerSecond(), allocatedBytes < 0 ? "unknown"
+                    : allocatedBytes / 1024 + " KB"));
+    description.append("Transposition table hits: ")
+            .append(transpositionTableHits).append(" of ")
+            .append(transpositionTableProbes).append(" probes, misses: ")
+            .append(transpositionTableProbes - transpositionTableHits)
+            .append(", stores: ").append(transpositionTableStores)
+            .append(", overwrites: ").append(transpositionTableOverwrites)
+            .append(System.lineSeparator());
+    description.append("Abort criteria wins: ").append(abortWins)
+            .append(", losses: ").append(abortLosses)
+            .append(", positions without moves: ").append(terminalPositions)
+            .append(", region solves: ").append(regionSolves)
+            .append(System.lineSeparator());
+    if (etcPositions > 0)
+    {
+      description.append("Enhanced transposition cutoffs: ").append(etcCutoffs)
+              .append(" of ").append(etcPositions)
+              .append(" positions, children looked up: ").append(etcProbes)
+              .append(System.lineSeparator());
+    }
+    description.append("Nodes per depth: ")
+            .append(Arrays.toString(getNodesPerDepth()))
+            .append(System.lineSeparator());
+    description.append("Cutoffs by move index: ")
+            .append(Arrays.toString(getCutoffsByMoveIndex()))
+            .append(System.lineSeparator());
+    return description.toString();
+  }
+}
@@ -0,0 +1,106 @@
+package cgtsolver;
+
+/**
+ * Outcome and statistics of solving a board for both starting players.
+ *
+ * @author daniel
+ */
+public class SearchResult
+{
+  private final int width;
+  private final int height;
+  private final boolean verticalStartsWins;
+  private final boolean horizontalStartsWins;
+  private final long durationMillis;
+  private final SearchMetrics metrics;
+
+  public SearchResult(int width, int height, boolean verticalStartsWins,
+          boolean horizontalStartsWins, long durationMillis,
+          SearchMetrics metrics)
+  {
+    this.width = width;
+    this.height = height;
+    this.verticalStartsWins = verticalStartsWins;
+    this.horizontalStartsWins = horizontalStartsWins;
+    this.durationMillis = durationMillis;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Gets the result of the transposed board (height x width). Transposing
+   * turns every vertical piece into a horizontal one and vice versa, so the
+   * players swap roles; the statistics are those of this search.
+   *
+   * @return
+   */
+  public SearchResult transpose()
+  {
+    return new SearchResult(height, width, horizontalStartsWins,
+            verticalStartsWins, durationMillis, metrics);
+  }
+
+  /**
+   * Describes the outcome class of the board, e.g. "First player win.".
+   *
+   * @return
+   */
+  public String getOutcome()
+  {
+    return AbSolver.describeResult(verticalStartsWins, horizontalStartsWins);
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public boolean isVerticalStartsWins()
+  {
+    return verticalStartsWins;
+  }
+
+  public boolean isHorizontalStartsWins()
+  {
+    return horizontalStartsWins;
+  }
+
+  public long getNodes()
+  {
+    return metrics.getNodes();
+  }
+
+  public long getDurationMillis()
+  {
+    return durationMillis;
+  }
+
+  public long getTranspositionTableProbes()
+  {
+    return metrics.getTranspositionTableProbes();
+  }
+
+  public long getTranspositionTableHits()
+  {
+    return metrics.getTranspositionTableHits();
+  }
+
+  public long getTranspositionTableOverwrites()
+  {
+    return metrics.getTranspositionTableOverwrites();
+  }
+
+  /**
+   * Gets the detailed counters of the search.
+   *
+   * @return
+   */
+  public SearchMetrics getMetrics()
+  {
+    return metrics;
+  }
+}
@@ -0,0 +1,43 @@
+package cgtsolver;
+
+/**
+ * Tells the parts of a parallel search that their results are no longer
+ * needed. Signals form a tree: a signal counts as stopped as soon as it or any
+ * of its ancestors has been stopped, so a whole subtree of tasks can be
+ * abandoned at once.
+ *
+ * @author daniel
+ */
+class StopSignal
+{
+  private final StopSignal parent;
+
+  private volatile boolean stopped;
+
+  StopSignal()
+  {
+    this(null);
+  }
+
+  StopSignal(StopSignal parent)
+  {
+    this.parent = parent;
+  }
+
+  void stop()
+  {
+    stopped = true;
+  }
+
+  boolean isStopped()
+  {
+    for (StopSignal signal = this; signal != null; signal = signal.parent)
+    {
+      if (signal.stopped)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
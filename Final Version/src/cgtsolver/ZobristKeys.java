@@ -0,0 +1,173 @@
+package cgtsolver;
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+
+/**
+ * Random numbers of the Zobrist hashes of a board size: one key per tile and
+ * one included while the vertical player is to move. The keys are kept apart
+ * from the tables using them, so a {@link ZobristTranspositionTable}, an
+ * {@link OutcomeTable} or a {@link ProofNumberTable} can hash game states
+ * without creating another table just for its keys.
+ *
+ * @author daniel
+ */
+public class ZobristKeys
+{
+  private final int width;
+  private final int height;
+
+  /**
+   * Keys of the tiles, column by column (index <code>x * height + y</code>).
+   */
+  private final long[] table;
+  private final long sideToMoveKey;
+
+  /**
+   * Creates keys from a secure random source, so they differ in every run.
+   *
+   * @param width
+   * @param height
+   */
+  public ZobristKeys(int width, int height)
+  {
+    this.width = width;
+    this.height = height;
+    table = new long[width * height];
+    SecureRandom random = new SecureRandom();
+    //Fill a table of random numbers
+    for (int i = 0; i < table.length; i++)
+    {
+      table[i] = random.nextLong();
+    }
+    sideToMoveKey = random.nextLong();
+  }
+
+  /**
+   * Creates keys derived from a seed, which are the same in every run.
+   *
+   * @param width
+   * @param height
+   * @param seed
+   */
+  public ZobristKeys(int width, int height, long seed)
+  {
+    this.width = width;
+    this.height = height;
+    table = new long[width * height];
+    SplittableRandom random = new SplittableRandom(seed);
+    for (int i = 0; i < table.length; i++)
+    {
+      table[i] = random.nextLong();
+    }
+    sideToMoveKey = random.nextLong();
+  }
+
+  /**
+   * Creates a hash value for a board.
+   *
+   * @param board
+   * @param horizontallyFlipped
+   * @param verticallyFlipped
+   * @return
+   */
+  public long hash(boolean[][] board, boolean horizontallyFlipped,
+          boolean verticallyFlipped)
+  {
+    long h = 0;
+    int[] boardList = twoToOne(board, horizontallyFlipped, verticallyFlipped);
+    for (int i = 0; i < height * width; i++)
+    {
+      if (boardList[i] != 0)
+      {
+        h = h ^ table[i];
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Gets the random number a single occupied tile contributes to the hash of a
+   * board, consistent with {@link #hash(boolean[][], boolean, boolean)}.
+   *
+   * @param x
+   * @param y
+   * @param horizontallyFlipped
+   * @param verticallyFlipped
+   * @return
+   */
+  public long getTileKey(int x, int y, boolean horizontallyFlipped,
+          boolean verticallyFlipped)
+  {
+    int i = horizontallyFlipped ? width - 1 - x : x;
+    int j = verticallyFlipped ? height - 1 - y : y;
+    return table[i * height + j];
+  }
+
+  /**
+   * Gets the random number included in the hash of a game state while the
+   * vertical player is to move.
+   *
+   * @return
+   */
+  public long getSideToMoveKey()
+  {
+    return sideToMoveKey;
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  /**
+   * Converts the boolean board into the appropriate format for hashing.
+   *
+   * @param board
+   * @param horizontallyFlipped
+   * @param verticallyFlipped
+   * @return
+   */
+  private int[] twoToOne(boolean[][] board, boolean horizontallyFlipped,
+          boolean verticallyFlipped)
+  {
+    int counter = 0;
+    int[] boardList = new int[width * height];
+
+    int hStart = 0;
+    int hEnd = width;
+    if (horizontallyFlipped)
+    {
+      hStart = width - 1;
+      hEnd = -1;
+    }
+    int hIndex = (int) Math.signum(hEnd - hStart);
+
+    for (int i = hStart; i != hEnd; i += hIndex)
+    {
+      int vStart = 0;
+      int vEnd = height;
+      if (verticallyFlipped)
+      {
+        vStart = height - 1;
+        vEnd = -1;
+      }
+      int vIndex = (int) Math.signum(vEnd - vStart);
+
+      for (int j = vStart; j != vEnd; j += vIndex)
+      {
+        if (board[i][j] == true)
+        {
+          boardList[counter] = 1;
+        }
+        counter++;
+      }
+    }
+    return boardList;
+  }
+}
@@ -1,58 +1,472 @@
 package cgtsolver;
 
-import java.security.SecureRandom;
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 /**
  * Creates and manages a transposition table working with the Zobrist algorithm.
+ * <p>
+ * The entries are kept in a fixed size <code>long[]</code>, so the table never
+ * grows beyond the memory it was created with. Every hash maps to a bucket of
+ * two entries, each consisting of the full hash and a packed data word (valid
+ * flag, search effort and game value). The first entry of a bucket keeps the
+ * position that took the most effort to solve, the second entry is always
+ * replaced.
+ * <p>
+ * The table may be shared by several search threads without locking. An entry
+ * stores the hash XORed with its data word, so an entry torn by two concurrent
+ * writes no longer matches the hash it is probed with and is treated as
+ * missing. The statistics are not synchronized and only approximate while
+ * several threads use the table.
+ * <p>
+ * A table opened with {@link #openFile(File, int, int, int)} keeps its
+ * entries in a memory mapped file instead, so the positions proven by one run
+ * are available to later runs without loading anything. Its Zobrist keys are
+ * derived from a fixed seed, so the hashes are the same in every run. A file
+ * must not be used by several processes at once.
  *
  * @author daniel
  */
 public class ZobristTranspositionTable
 {
-  private long[] table;
-  private int height;
-  private int width;
+  /**
+   * Returned by {@link #getHashedValue(long)} if no value is stored for a hash.
+   */
+  public static final int NO_VALUE = Integer.MIN_VALUE;
+
+  /**
+   * Default size of the transposition table in megabytes.
+   */
+  public static final int DEFAULT_SIZE_MB = 64;
+
+  private static final int LONGS_PER_ENTRY = 2;
+  private static final int ENTRIES_PER_BUCKET = 2;
+  private static final int LONGS_PER_BUCKET = LONGS_PER_ENTRY
+          * ENTRIES_PER_BUCKET;
+
+  private static final long VALID_FLAG = 1L << 63;
+  private static final long MAX_EFFORT = (1L << 31) - 1;
+
+  /**
+   * Layout of the header of a table file: magic number, format version,
+   * board width and height, bucket count and seed of the Zobrist keys.
+   */
+  private static final long FILE_MAGIC = 0x54524954524D4F4EL;
+  private static final long FILE_VERSION = 1;
+  private static final int HEADER_LONGS = 8;
+
+  /**
+   * Seed of the Zobrist keys of table files.
+   */
+  private static final long FILE_KEY_SEED = 0x2545F4914F6CDD1DL;
 
-  private HashMap<Long, Integer> transpositionMap;
+  private ZobristKeys keys;
+
+  /**
+   * Hash entries: key and data word for both entries of every bucket. Null if
+   * the table is backed by a file.
+   */
+  private long[] entries;
+
+  /**
+   * Hash entries of a table backed by a file, laid out like
+   * {@link #entries}.
+   */
+  private LongBuffer mappedEntries;
+  private MappedByteBuffer mappedFile;
+
+  /**
+   * Selects a bucket from the lower bits of a hash.
+   */
+  private int bucketMask;
+
+  private long probes;
+  private long hits;
+  private long stores;
+  private long overwrites;
 
   public ZobristTranspositionTable(int tWidth, int tHeight)
   {
-    transpositionMap = new HashMap<>();
+    this(tWidth, tHeight, DEFAULT_SIZE_MB);
+  }
+
+  /**
+   * Creates a transposition table using at most the given amount of memory
+   * for its entries. The number of buckets is rounded down to a power of two.
+   *
+   * @param tWidth
+   * @param tHeight
+   * @param sizeMb
+   */
+  public ZobristTranspositionTable(int tWidth, int tHeight, int sizeMb)
+  {
+    this(new ZobristKeys(tWidth, tHeight), sizeMb);
+  }
+
+  /**
+   * Creates an empty transposition table using existing Zobrist keys, e.g.
+   * those of another table, so hashes of game states are valid for both.
+   *
+   * @param keys
+   * @param sizeMb
+   */
+  public ZobristTranspositionTable(ZobristKeys keys, int sizeMb)
+  {
+    this(sizeMb);
+    this.keys = keys;
+  }
+
+  private ZobristTranspositionTable(int sizeMb)
+  {
+    //Stay within the maximum array length
+    int bucketCount = bucketCount(sizeMb, 1 << 28);
+    entries = new long[bucketCount * LONGS_PER_BUCKET];
+    bucketMask = bucketCount - 1;
+  }
+
+  private ZobristTranspositionTable()
+  {
+  }
+
+  /**
+   * Opens a transposition table stored in a file, creating the file if it
+   * does not exist yet. An existing file keeps its stored positions; it must
+   * have been created for a board of the same size. A file whose header does
+   * not match its length, this format version or the requested size is
+   * rebuilt empty.
+   *
+   * @param file
+   * @param tWidth
+   * @param tHeight
+   * @param sizeMb Memory used for the entries, at most 1024.
+   * @return
+   * @throws IOException
+   */
+  public static ZobristTranspositionTable openFile(File file, int tWidth,
+          int tHeight, int sizeMb) throws IOException
+  {
+    ZobristTranspositionTable transpositionTable
+            = new ZobristTranspositionTable();
+    //A single mapping is limited to 2 GB
+    long bucketCount = bucketCount(sizeMb, 1 << 25);
+    long fileSize = (HEADER_LONGS + bucketCount * LONGS_PER_BUCKET)
+            * Long.BYTES;
+
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+    {
+      FileChannel channel = randomAccessFile.getChannel();
+      boolean created = channel.size() < HEADER_LONGS * Long.BYTES;
+      if (!created)
+      {
+        //Read rather than mapped, so the file may be truncated afterwards
+        ByteBuffer headerBytes = ByteBuffer.allocate(HEADER_LONGS * Long.BYTES)
+                .order(ByteOrder.nativeOrder());
+        channel.read(headerBytes, 0);
+        headerBytes.flip();
+        LongBuffer header = headerBytes.asLongBuffer();
+        if (header.get(0) != FILE_MAGIC)
+        {
+          //Rather fail than overwrite a file that is none of ours
+          throw new IOException(file + " is no transposition table file");
+        }
+        if (header.get(1) == FILE_VERSION
+                && (header.get(2) != tWidth || header.get(3) != tHeight))
+        {
+          throw new IllegalArgumentException(file + " holds a "
+                  + header.get(2) + "x" + header.get(3) + " board, not "
+                  + tWidth + "x" + tHeight);
+        }
+        //Truncated files, files of another format or size are started anew
+        created = header.get(1) != FILE_VERSION
+                || header.get(4) != bucketCount
+                || channel.size() != fileSize;
+      }
+      if (created)
+      {
+        channel.truncate(0);
+      }
+
+      //The mapping stays valid after the channel is closed
+      MappedByteBuffer mappedFile = channel.map(
+              FileChannel.MapMode.READ_WRITE, 0, fileSize);
+      mappedFile.order(ByteOrder.nativeOrder());
+      LongBuffer words = mappedFile.asLongBuffer();
+      if (created)
+      {
+        words.put(0, FILE_MAGIC);
+        words.put(1, FILE_VERSION);
+        words.put(2, tWidth);
+        words.put(3, tHeight);
+        words.put(4, bucketCount);
+        words.put(5, FILE_KEY_SEED);
+      }
+      transpositionTable.mappedFile = mappedFile;
+      words.position(HEADER_LONGS);
+      transpositionTable.mappedEntries = words.slice();
+      transpositionTable.bucketMask = (int) bucketCount - 1;
+
+      transpositionTable.keys = new ZobristKeys(tWidth, tHeight,
+              words.get(5));
+    }
+    return transpositionTable;
+  }
+
+  /**
+   * Gets the number of buckets fitting in the given amount of memory, rounded
+   * down to a power of two.
+   *
+   * @param sizeMb
+   * @param maxBucketCount
+   * @return
+   */
+  private static int bucketCount(int sizeMb, int maxBucketCount)
+  {
+    if (sizeMb <= 0)
+    {
+      throw new IllegalArgumentException(
+              "Transposition table size must be positive, was " + sizeMb);
+    }
+    long bucketCount = Long.highestOneBit(
+            ((long) sizeMb << 20) / (LONGS_PER_BUCKET * Long.BYTES));
+    return (int) Math.min(Math.max(bucketCount, 1), maxBucketCount);
+  }
 
-    height = tHeight;
-    width = tWidth;
-    table = new long[height * width];
-    SecureRandom random = new SecureRandom();
-    //Fill a table of random numbers
-    for (int i = 0; i < table.length - 1; i++)
+  /**
+   * Writes the entries of a table backed by a file to disk. Does nothing for
+   * other tables.
+   */
+  public void flush()
+  {
+    if (mappedFile != null)
     {
-      table[i] = random.nextLong();
+      mappedFile.force();
     }
   }
 
+  public boolean isBackedByFile()
+  {
+    return mappedFile != null;
+  }
+
   /**
-   * Clear all data from the transposition table.
+   * Clear all data and statistics from the transposition table.
    */
   public void clear()
   {
-    transpositionMap.clear();
+    if (entries != null)
+    {
+      Arrays.fill(entries, 0);
+    }
+    else
+    {
+      for (int i = 0; i < mappedEntries.capacity(); i++)
+      {
+        mappedEntries.put(i, 0);
+      }
+    }
+    resetStatistics();
+  }
+
+  /**
+   * Clear the statistics, but keep the stored positions.
+   */
+  public void resetStatistics()
+  {
+    probes = 0;
+    hits = 0;
+    stores = 0;
+    overwrites = 0;
   }
 
   /**
    * Get the game value (win or loss) for a certain position.
    *
    * @param hash
-   * @return The game value or null if no known value is stored.
+   * @return The game value or {@link #NO_VALUE} if no known value is stored.
    */
-  public Integer getHashedValue(long hash)
+  public int getHashedValue(long hash)
   {
-    return transpositionMap.get(hash);
+    probes++;
+    int bucket = bucketIndex(hash);
+    for (int entry = bucket; entry < bucket + LONGS_PER_BUCKET;
+            entry += LONGS_PER_ENTRY)
+    {
+      long data = word(entry + 1);
+      if ((word(entry) ^ data) == hash && (data & VALID_FLAG) != 0)
+      {
+        hits++;
+        return (int) data;
+      }
+    }
+    return NO_VALUE;
   }
 
   public void setHashedValue(long hash, int gameValue)
   {
-    transpositionMap.put(hash, gameValue);
+    setHashedValue(hash, gameValue, 1);
+  }
+
+  /**
+   * Stores the game value of a position. The effort (e.g. the number of nodes
+   * searched to prove the value) decides which entry of the bucket is used: a
+   * position replaces the preferred entry if it took at least as much effort
+   * as the one stored there, which then moves to the always-replace entry.
+   *
+   * @param hash
+   * @param gameValue
+   * @param effort
+   */
+  public void setHashedValue(long hash, int gameValue, long effort)
+  {
+    stores++;
+    long data = VALID_FLAG | Math.min(Math.max(effort, 0), MAX_EFFORT) << 32
+            | (gameValue & 0xFFFFFFFFL);
+
+    int preferred = bucketIndex(hash);
+    int alwaysReplace = preferred + LONGS_PER_ENTRY;
+    //Read every word once, other threads may change them meanwhile
+    long preferredData = word(preferred + 1);
+    long preferredHash = word(preferred) ^ preferredData;
+    long alwaysReplaceData = word(alwaysReplace + 1);
+    long alwaysReplaceHash = word(alwaysReplace) ^ alwaysReplaceData;
+
+    if (preferredHash == hash || (preferredData & VALID_FLAG) == 0)
+    {
+      writeEntry(preferred, hash, data);
+      return;
+    }
+    if (effort(data) >= effort(preferredData))
+    {
+      //Demote the previously preferred position
+      if (alwaysReplaceHash != hash)
+      {
+        countOverwrite(alwaysReplaceData);
+      }
+      writeEntry(alwaysReplace, preferredHash, preferredData);
+      writeEntry(preferred, hash, data);
+      return;
+    }
+    if (alwaysReplaceHash != hash)
+    {
+      countOverwrite(alwaysReplaceData);
+    }
+    writeEntry(alwaysReplace, hash, data);
+  }
+
+  private void writeEntry(int entry, long hash, long data)
+  {
+    if (entries != null)
+    {
+      entries[entry] = hash ^ data;
+      entries[entry + 1] = data;
+    }
+    else
+    {
+      mappedEntries.put(entry, hash ^ data);
+      mappedEntries.put(entry + 1, data);
+    }
+  }
+
+  private long word(int index)
+  {
+    return entries != null ? entries[index] : mappedEntries.get(index);
+  }
+
+  private void countOverwrite(long data)
+  {
+    if ((data & VALID_FLAG) != 0)
+    {
+      overwrites++;
+    }
+  }
+
+  private int bucketIndex(long hash)
+  {
+    return ((int) hash & bucketMask) * LONGS_PER_BUCKET;
+  }
+
+  private static long effort(long data)
+  {
+    return (data & ~VALID_FLAG) >>> 32;
+  }
+
+  /**
+   * Gets the number of value lookups since the last clear.
+   *
+   * @return
+   */
+  public long getProbes()
+  {
+    return probes;
+  }
+
+  public long getHits()
+  {
+    return hits;
+  }
+
+  public long getMisses()
+  {
+    return probes - hits;
+  }
+
+  public long getStores()
+  {
+    return stores;
+  }
+
+  /**
+   * Gets the number of stores that evicted a different position.
+   *
+   * @return
+   */
+  public long getOverwrites()
+  {
+    return overwrites;
+  }
+
+  /**
+   * Gets the number of positions the table can hold.
+   *
+   * @return
+   */
+  public int getCapacity()
+  {
+    return (bucketMask + 1) * ENTRIES_PER_BUCKET;
+  }
+
+  /**
+   * Get the game value (win or loss) of a game state or any of its flipped
+   * versions.
+   *
+   * @param gameState
+   * @return The game value or {@link #NO_VALUE} if no known value is stored.
+   */
+  public int getHashedValue(GameState gameState)
+  {
+    return getHashedValue(gameState.getCanonicalHash());
+  }
+
+  /**
+   * Puts a game state in the transposition table along with its game value.
+   * A single entry under the canonical hash serves the flipped versions
+   * (horizontally and/or vertically) as well. Uses the hashes maintained by
+   * the game state, so no board scan is needed.
+   *
+   * @param gameState
+   * @param gameValue
+   * @param effort Number of nodes searched to determine the game value.
+   */
+  public void hashCanonical(GameState gameState, int gameValue, long effort)
+  {
+    setHashedValue(gameState.getCanonicalHash(), gameValue, effort);
   }
 
   /**
@@ -75,7 +489,8 @@ public class ZobristTranspositionTable
   }
 
   /**
-   * Creates a hash value for a board.
+   * Creates a hash value for a board, see
+   * {@link ZobristKeys#hash(boolean[][], boolean, boolean)}.
    *
    * @param board
    * @param horizontallyFlipped
@@ -85,61 +500,26 @@ public class ZobristTranspositionTable
   public long hash(boolean[][] board, boolean horizontallyFlipped,
           boolean verticallyFlipped)
   {
-    long h = 0;
-    int[] boardList = twoToOne(board, horizontallyFlipped, verticallyFlipped);
-    for (int i = 0; i < height * width - 1; i++)
-    {
-      if (boardList[i] != 0)
-      {
-        h = h ^ table[i];
-      }
-    }
-    return h;
+    return keys.hash(board, horizontallyFlipped, verticallyFlipped);
   }
 
   /**
-   * Converts the boolean board into the appropriate format for hashing.
+   * Gets the Zobrist keys the positions of this table are hashed with.
    *
-   * @param board
-   * @param horizontallyFlipped
-   * @param verticallyFlipped
    * @return
    */
-  private int[] twoToOne(boolean[][] board, boolean horizontallyFlipped,
-          boolean verticallyFlipped)
+  public ZobristKeys getKeys()
   {
-    int counter = 0;
-    int[] boardList = new int[width * height];
-
-    int hStart = 0;
-    int hEnd = width;
-    if (horizontallyFlipped)
-    {
-      hStart = width - 1;
-      hEnd = -1;
-    }
-    int hIndex = (int) Math.signum(hEnd - hStart);
+    return keys;
+  }
 
-    for (int i = hStart; i != hEnd; i += hIndex)
-    {
-      int vStart = 0;
-      int vEnd = height;
-      if (verticallyFlipped)
-      {
-        vStart = height - 1;
-        vEnd = -1;
-      }
-      int vIndex = (int) Math.signum(vEnd - vStart);
+  public int getWidth()
+  {
+    return keys.getWidth();
+  }
 
-      for (int j = vStart; j != vEnd; j += vIndex)
-      {
-        if (board[i][j] == true)
-        {
-          boardList[counter] = 1;
-        }
-        counter++;
-      }
-    }
-    return boardList;
+  public int getHeight()
+  {
+    return keys.getHeight();
   }
 }
@@ -0,0 +1,120 @@
+/*
+ * PrimaryCacheCheck.java
+ */
+
+package cgsuite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that several threads can add games through the primary cache of
+ * the default context at the same time, as the workers of a parallel search
+ * do when they sum the values of board regions. Every thread computes the
+ * same sums in a different order; all of them must get the same games as a
+ * single thread with an empty cache, within a time limit (a corrupted hash
+ * map may loop forever).
+ * <p>
+ * Run with <code>java cgsuite.PrimaryCacheCheck [threads]</code>; exits
+ * with status 1 if the check fails.
+ *
+ * @author daniel
+ */
+public class PrimaryCacheCheck
+{
+    private static final long SEED = 20160517L;
+    private static final int GAMES = 2000;
+    private static final int SUMS = 200000;
+    private static final long TIMEOUT_SECONDS = 300;
+
+    public static void main(String[] args) throws Exception
+    {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+        Random random = new Random(SEED);
+        CanonicalGame[] games = createGames(random);
+        final CanonicalGame[] left = new CanonicalGame[SUMS], right = new CanonicalGame[SUMS];
+        for (int i = 0; i < SUMS; i++)
+        {
+            left[i] = games[random.nextInt(GAMES)];
+            right[i] = games[random.nextInt(GAMES)];
+        }
+
+        Context.setActiveContext(new Context.DefaultContext());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<CanonicalGame[]>> futures = new ArrayList<Future<CanonicalGame[]>>();
+        for (int t = 0; t < threads; t++)
+        {
+            final int start = t * SUMS / threads;
+            futures.add(executor.submit(() ->
+            {
+                CanonicalGame[] sums = new CanonicalGame[SUMS];
+                for (int k = 0; k < SUMS; k++)
+                {
+                    int i = (start + k) % SUMS;
+                    sums[i] = left[i].plus(right[i]);
+                }
+                return sums;
+            }));
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        {
+            fail("The sums did not finish within " + TIMEOUT_SECONDS + " seconds.");
+        }
+
+        Context.setActiveContext(new Context.DefaultContext());
+        for (int t = 0; t < threads; t++)
+        {
+            CanonicalGame[] sums = futures.get(t).get();
+            for (int i = 0; i < SUMS; i++)
+            {
+                if (sums[i] != left[i].plus(right[i]))
+                {
+                    fail("Thread " + t + " got a wrong sum " + i + ".");
+                }
+            }
+        }
+        System.out.println("ok: " + threads + " threads, " + SUMS + " sums each");
+    }
+
+    /**
+     * Creates games from random options among the games created before.
+     */
+    private static CanonicalGame[] createGames(Random random)
+    {
+        List<CanonicalGame> pool = new ArrayList<CanonicalGame>();
+        pool.add(CanonicalGame.ZERO);
+        pool.add(CanonicalGame.STAR);
+        pool.add(CanonicalGame.fromInteger(1));
+        pool.add(CanonicalGame.fromInteger(-1));
+        CanonicalGame[] games = new CanonicalGame[GAMES];
+        for (int n = 0; n < GAMES; n++)
+        {
+            List<CanonicalGame> leftOptions = new ArrayList<CanonicalGame>(), rightOptions = new ArrayList<CanonicalGame>();
+            int recent = Math.min(pool.size(), 40);
+            for (int k = random.nextInt(3); k > 0; k--)
+            {
+                leftOptions.add(pool.get(pool.size() - 1 - random.nextInt(recent)));
+            }
+            for (int k = random.nextInt(3); k > 0; k--)
+            {
+                rightOptions.add(pool.get(pool.size() - 1 - random.nextInt(recent)));
+            }
+            games[n] = CanonicalGame.fromOptions(leftOptions, rightOptions);
+            pool.add(games[n]);
+        }
+        return games;
+    }
+
+    private static void fail(String message)
+    {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}